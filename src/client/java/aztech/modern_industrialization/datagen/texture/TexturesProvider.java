@@ -38,7 +38,6 @@ import aztech.modern_industrialization.resource.FastPathPackResources;
 import aztech.modern_industrialization.textures.MITextures;
 import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
-import com.mojang.blaze3d.platform.NativeImage;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -100,8 +99,12 @@ public record TexturesProvider(FabricDataOutput packOutput, boolean runtimeDatag
         List<PackResources> generatedPack = List.of(new FastPathPackResources("gen", generatedResources, true));
 
         var outputPack = new MultiPackResourceManager(PackType.CLIENT_RESOURCES, generatedPack);
+        // Only runtime datagen keeps a texture cache, regular datagen always regenerates everything
+        Path cacheFolder = runtimeDatagen
+                ? FabricLoader.getInstance().getGameDir().resolve("modern_industrialization").resolve("texture_cache")
+                : null;
         return MITextures.offerTextures(
-                (image, textureId) -> writeTexture(cache, image, textureId),
+                (pngBytes, textureId) -> writeTexture(cache, pngBytes, textureId),
                 (json, path) -> futureList.accept(customJsonSave(cache, json, path)),
                 resourceLocation -> {
                     // Generated first
@@ -110,14 +113,14 @@ public record TexturesProvider(FabricDataOutput packOutput, boolean runtimeDatag
                         return generated;
                     }
                     return fallbackResourceProvider.getResource(resourceLocation);
-                })
+                }, cacheFolder)
                 .whenComplete((result, throwable) -> outputPack.close());
     }
 
-    private void writeTexture(CachedOutput cache, NativeImage image, String textureId) {
+    private void writeTexture(CachedOutput cache, byte[] pngBytes, String textureId) {
         try {
             var path = packOutput.getOutputFolder().resolve("assets").resolve(textureId.replace(':', '/'));
-            cache.writeIfNeeded(path, image.asByteArray(), Hashing.sha1().hashBytes(image.asByteArray()));
+            cache.writeIfNeeded(path, pngBytes, Hashing.sha1().hashBytes(pngBytes));
         } catch (IOException ex) {
             throw new RuntimeException("Failed to write texture " + textureId, ex);
         }
@@ -35,20 +35,26 @@ import aztech.modern_industrialization.textures.coloramp.IColoramp;
 import com.google.gson.JsonElement;
 import com.mojang.blaze3d.platform.NativeImage;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
-import java.util.function.Consumer;
 import net.minecraft.Util;
 import net.minecraft.server.packs.resources.ResourceProvider;
 import org.jetbrains.annotations.Nullable;
 
 public final class MITextures {
 
-    public static CompletableFuture<?> offerTextures(BiConsumer<NativeImage, String> textureWriter, BiConsumer<JsonElement, String> mcMetaWriter,
-            ResourceProvider manager) {
-        TextureManager mtm = new TextureManager(manager, textureWriter, mcMetaWriter);
+    /**
+     * @param textureWriter Receives the PNG bytes and the id of every texture.
+     * @param cacheFolder   Folder of the persistent texture cache, or {@code null} to always regenerate every texture.
+     */
+    public static CompletableFuture<?> offerTextures(BiConsumer<byte[], String> textureWriter, BiConsumer<JsonElement, String> mcMetaWriter,
+            ResourceProvider manager, @Nullable Path cacheFolder) {
+        long startTime = System.nanoTime();
+        TextureCache cache = cacheFolder == null ? null : TextureCache.load(cacheFolder);
+        TextureManager mtm = new TextureManager(manager, textureWriter, mcMetaWriter, cache);
 
         // Texture generation runs in two phases:
         // 1. all textures that don't depend on other generated textures are submitted to {@code defer.accept} and generated in parallel.
@@ -57,7 +63,10 @@ public final class MITextures {
 
         // Futures for the first work phase
         List<CompletableFuture<?>> futures = new ArrayList<>();
-        Consumer<IORunnable> defer = r -> futures.add(CompletableFuture.runAsync(r::safeRun, Util.backgroundExecutor()));
+        BiConsumer<String, IORunnable> defer = (key, r) -> {
+            IORunnable cachedJob = () -> mtm.runCached(key, r);
+            futures.add(CompletableFuture.runAsync(cachedJob::safeRun, Util.backgroundExecutor()));
+        };
 
         for (Material material : MaterialRegistry.getMaterials().values()) {
             var meanRgb = material.get(MaterialProperty.MEAN_RGB);
@@ -68,60 +77,84 @@ public final class MITextures {
             }
 
             IColoramp coloramp = new Coloramp(mtm, meanRgb, material.name);
+            // The coloramp is built outside the jobs, so the gradient map must be part of their key.
+            String colorampKey = Integer.toHexString(meanRgb) + "/" + mtm.getAssetHash(Coloramp.getGradientMapPath(material.name));
 
             for (MaterialItemPart part : material.getParts().values()) {
-                defer.accept(() -> PartTextureGenerator.processPart(coloramp, mtm, material, part));
+                String key = String.join("/", "part", part.getItemId(), part.key().toString(), part.getTextureGenParams().toString(),
+                        material.get(MaterialProperty.SET).name, colorampKey);
+                defer.accept(key, () -> PartTextureGenerator.processPart(coloramp, mtm, material, part));
             }
         }
 
         for (FluidDefinition fluid : MIFluids.FLUIDS.values()) {
-            defer.accept(() -> registerFluidTextures(mtm, fluid));
+            String key = String.join("/", "fluid", fluid.path(), Integer.toHexString(fluid.color), Integer.toString(fluid.opacity),
+                    Boolean.toString(fluid.isGas), fluid.fluidTexture.name());
+            defer.accept(key, () -> registerFluidTextures(mtm, fluid));
         }
 
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "lv", mtm.getAssetAsTexture("modern_industrialization:textures/block/basic_machine_hull.png")));
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "mv", mtm.getAssetAsTexture("modern_industrialization:textures/block/advanced_machine_hull.png")));
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "hv", mtm.getAssetAsTexture("modern_industrialization:textures/block/turbo_machine_hull.png")));
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "ev",
+        mtm.runAtEnd("casing/lv",
+                () -> casingFromTexture(mtm, "lv", mtm.getAssetAsTexture("modern_industrialization:textures/block/basic_machine_hull.png")));
+        mtm.runAtEnd("casing/mv",
+                () -> casingFromTexture(mtm, "mv", mtm.getAssetAsTexture("modern_industrialization:textures/block/advanced_machine_hull.png")));
+        mtm.runAtEnd("casing/hv",
+                () -> casingFromTexture(mtm, "hv", mtm.getAssetAsTexture("modern_industrialization:textures/block/turbo_machine_hull.png")));
+        mtm.runAtEnd("casing/ev", () -> casingFromTexture(mtm, "ev",
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/highly_advanced_machine_hull.png")));
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "superconductor",
+        mtm.runAtEnd("casing/superconductor", () -> casingFromTexture(mtm, "superconductor",
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/quantum_machine_hull.png")));
-        mtm.runAtEnd(
+        mtm.runAtEnd("casing/nuclear",
                 () -> casingFromTexture(mtm, "nuclear", mtm.getAssetAsTexture("modern_industrialization:textures/block/nuclear_machine_casing.png")));
 
-        mtm.runAtEnd(
+        mtm.runAtEnd("casing/firebricks",
                 () -> casingFromTexture(mtm, "firebricks", mtm.getAssetAsTexture("modern_industrialization:textures/block/fire_clay_bricks.png")));
 
-        mtm.runAtEnd(() -> casingFromTexture(mtm, "bricks", mtm.getAssetAsTexture("minecraft:textures/block/bricks.png")));
+        mtm.runAtEnd("casing/bricks", () -> casingFromTexture(mtm, "bricks", mtm.getAssetAsTexture("minecraft:textures/block/bricks.png")));
 
-        mtm.runAtEnd(() -> casingFromTextureBricked(mtm, "bricked_bronze",
+        mtm.runAtEnd("casing/bricked_bronze", () -> casingFromTextureBricked(mtm, "bricked_bronze",
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/bronze_machine_casing.png"),
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/fire_clay_bricks.png")));
 
-        mtm.runAtEnd(() -> casingFromTextureBricked(mtm, "bricked_steel",
+        mtm.runAtEnd("casing/bricked_steel", () -> casingFromTextureBricked(mtm, "bricked_steel",
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/steel_machine_casing.png"),
                 mtm.getAssetAsTexture("modern_industrialization:textures/block/fire_clay_bricks.png")));
 
-        mtm.runAtEnd(() -> mtm.addTexture("modern_industrialization:textures/item/mixed_ingot_blastproof.png",
+        mtm.runAtEnd("item/mixed_ingot_blastproof", () -> mtm.addTexture("modern_industrialization:textures/item/mixed_ingot_blastproof.png",
                 TextureHelper.tripleTexture(mtm.getAssetAsTexture("modern_industrialization:textures/item/stainless_steel_ingot.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/titanium_ingot.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/tungsten_ingot.png"))));
 
-        mtm.runAtEnd(() -> mtm.addTexture("modern_industrialization:textures/item/mixed_plate_nuclear.png",
+        mtm.runAtEnd("item/mixed_plate_nuclear", () -> mtm.addTexture("modern_industrialization:textures/item/mixed_plate_nuclear.png",
                 TextureHelper.tripleTexture(mtm.getAssetAsTexture("modern_industrialization:textures/item/cadmium_plate.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/beryllium_plate.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/blastproof_alloy_plate.png"), 1, 2)));
 
-        mtm.runAtEnd(() -> mtm.addTexture("modern_industrialization:textures/item/mixed_ingot_iridium.png",
+        mtm.runAtEnd("item/mixed_ingot_iridium", () -> mtm.addTexture("modern_industrialization:textures/item/mixed_ingot_iridium.png",
                 TextureHelper.tripleTexture(mtm.getAssetAsTexture("modern_industrialization:textures/item/blastproof_alloy_ingot.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/iridium_ingot.png"),
                         mtm.getAssetAsTexture("modern_industrialization:textures/item/blastproof_alloy_ingot.png"))));
 
+        long[] phaseStart = { System.nanoTime() };
+        ModernIndustrialization.LOGGER.info("Texture generation setup took {} ms", (phaseStart[0] - startTime) / 1_000_000);
+
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
                 .thenComposeAsync(v -> {
+                    long now = System.nanoTime();
+                    ModernIndustrialization.LOGGER.info("Texture generation phase 1 took {} ms", (now - phaseStart[0]) / 1_000_000);
+                    phaseStart[0] = now;
                     // Do second phase work
                     return mtm.doEndWork();
                 }, Util.backgroundExecutor())
-                .thenRun(() -> ModernIndustrialization.LOGGER.info("I used the png to destroy the png."));
+                .thenRun(() -> {
+                    long now = System.nanoTime();
+                    ModernIndustrialization.LOGGER.info("Texture generation phase 2 took {} ms", (now - phaseStart[0]) / 1_000_000);
+                    if (cache != null) {
+                        cache.save();
+                        ModernIndustrialization.LOGGER.info("Texture cache: {} jobs reused, {} jobs generated, saved in {} ms", cache.getHits(),
+                                cache.getMisses(), (System.nanoTime() - now) / 1_000_000);
+                    }
+                    ModernIndustrialization.LOGGER.info("I used the png to destroy the png.");
+                });
     }
 
     private static String getTemplate(String materialSet, String part, String suffix) {
@@ -137,7 +137,7 @@ class PartTextureGenerator {
     }
 
     private void processDoubleIngot(PartKeyProvider part) {
-        mtm.runAtEnd(() -> {
+        mtm.runAtEnd("double_ingot/" + materialName, () -> {
             try {
                 MITextures.generateDoubleIngot(mtm, materialName);
             } catch (Throwable throwable) {
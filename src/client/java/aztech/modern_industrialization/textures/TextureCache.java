@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.textures;
+
+import aztech.modern_industrialization.ModernIndustrialization;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import net.fabricmc.loader.api.FabricLoader;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistent cache for runtime texture generation.
+ *
+ * <p>
+ * Every generation job is stored under a key describing its parameters, together with the content hash of every asset it read and the content
+ * hash of every texture it wrote. Texture contents are stored once per hash in the {@code blobs} folder. A job whose inputs all still hash to the
+ * recorded values is replayed from the stored bytes instead of being regenerated.
+ */
+final class TextureCache {
+    /**
+     * Bump this when the generation code changes in a way that affects its output.
+     */
+    private static final int GENERATOR_VERSION = 1;
+    private static final String INDEX_FILE = "index.json";
+    static final String ABSENT = "absent";
+
+    private static final Gson GSON = new Gson();
+
+    private final Path folder;
+    private final Path blobFolder;
+    private final String version;
+    private final Map<String, Entry> previousEntries;
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param inputs   Asset id to content hash, or {@link #ABSENT} if the asset was missing.
+     * @param textures Texture id to content hash.
+     * @param mcMetas  Path to the written mcmeta json.
+     */
+    record Entry(Map<String, String> inputs, Map<String, String> textures, Map<String, JsonElement> mcMetas) {
+    }
+
+    private TextureCache(Path folder, String version, Map<String, Entry> previousEntries) {
+        this.folder = folder;
+        this.blobFolder = folder.resolve("blobs");
+        this.version = version;
+        this.previousEntries = previousEntries;
+    }
+
+    static String hash(byte[] bytes) {
+        return Hashing.sha1().hashBytes(bytes).toString();
+    }
+
+    static TextureCache load(Path folder) {
+        String modVersion = FabricLoader.getInstance().getModContainer(ModernIndustrialization.MOD_ID)
+                .map(c -> c.getMetadata().getVersion().getFriendlyString())
+                .orElse("unknown");
+        String version = GENERATOR_VERSION + "/" + modVersion;
+
+        Map<String, Entry> entries = new HashMap<>();
+        Path indexPath = folder.resolve(INDEX_FILE);
+        if (Files.exists(indexPath)) {
+            try (var reader = Files.newBufferedReader(indexPath)) {
+                JsonObject index = JsonParser.parseReader(reader).getAsJsonObject();
+                if (index.has("version") && index.get("version").getAsString().equals(version)) {
+                    for (var jobEntry : index.getAsJsonObject("entries").entrySet()) {
+                        JsonObject job = jobEntry.getValue().getAsJsonObject();
+                        entries.put(jobEntry.getKey(), new Entry(
+                                readStringMap(job.getAsJsonObject("inputs")),
+                                readStringMap(job.getAsJsonObject("textures")),
+                                job.getAsJsonObject("mcmetas").asMap()));
+                    }
+                } else {
+                    ModernIndustrialization.LOGGER.info("Texture cache is outdated, all textures will be regenerated");
+                }
+            } catch (Exception ex) {
+                ModernIndustrialization.LOGGER.warn("Failed to read texture cache index, all textures will be regenerated", ex);
+                entries.clear();
+            }
+        }
+
+        return new TextureCache(folder, version, entries);
+    }
+
+    private static Map<String, String> readStringMap(JsonObject object) {
+        Map<String, String> map = new HashMap<>();
+        for (var entry : object.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().getAsString());
+        }
+        return map;
+    }
+
+    /**
+     * Return the entry stored by the previous run for this job, if any.
+     */
+    @Nullable
+    Entry get(String key) {
+        return previousEntries.get(key);
+    }
+
+    /**
+     * Record a job that was replayed from the cache.
+     */
+    void keep(String key, Entry entry) {
+        currentEntries.put(key, entry);
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Record a job that had to be generated.
+     */
+    void put(String key, Entry entry) {
+        currentEntries.put(key, entry);
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Record a job that had to be generated but cannot be cached.
+     */
+    void skip() {
+        misses.incrementAndGet();
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    @Nullable
+    byte[] readBlob(String hash) {
+        Path path = blobFolder.resolve(hash + ".png");
+        try {
+            return Files.exists(path) ? Files.readAllBytes(path) : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    void writeBlob(String hash, byte[] bytes) {
+        Path path = blobFolder.resolve(hash + ".png");
+        try {
+            if (!Files.exists(path)) {
+                Files.createDirectories(blobFolder);
+                // Write to a temporary file first so that a concurrent writer of the same blob never exposes a partial file
+                Path tmp = Files.createTempFile(blobFolder, hash, ".tmp");
+                Files.write(tmp, bytes);
+                try {
+                    Files.move(tmp, path);
+                } catch (IOException ex) {
+                    // Somebody else wrote the same blob in the meantime
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.warn("Failed to write texture cache blob " + hash, ex);
+        }
+    }
+
+    /**
+     * Write the index of the jobs used by this run, and delete the blobs that are no longer referenced.
+     */
+    void save() {
+        JsonObject entries = new JsonObject();
+        Set<String> usedBlobs = new HashSet<>();
+        for (var jobEntry : currentEntries.entrySet()) {
+            Entry entry = jobEntry.getValue();
+            JsonObject job = new JsonObject();
+            job.add("inputs", GSON.toJsonTree(entry.inputs()));
+            job.add("textures", GSON.toJsonTree(entry.textures()));
+            JsonObject mcMetas = new JsonObject();
+            entry.mcMetas().forEach(mcMetas::add);
+            job.add("mcmetas", mcMetas);
+            entries.add(jobEntry.getKey(), job);
+
+            for (String hash : entry.textures().values()) {
+                usedBlobs.add(hash + ".png");
+            }
+        }
+
+        JsonObject index = new JsonObject();
+        index.addProperty("version", version);
+        index.add("entries", entries);
+
+        try {
+            Files.createDirectories(folder);
+            Files.writeString(folder.resolve(INDEX_FILE), GSON.toJson(index));
+
+            if (Files.isDirectory(blobFolder)) {
+                try (Stream<Path> blobs = Files.list(blobFolder)) {
+                    for (Path blob : (Iterable<Path>) blobs::iterator) {
+                        if (!usedBlobs.contains(blob.getFileName().toString())) {
+                            Files.deleteIfExists(blob);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.warn("Failed to save texture cache", ex);
+        }
+    }
+}
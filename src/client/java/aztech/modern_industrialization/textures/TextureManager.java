@@ -27,31 +27,53 @@ import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.mojang.blaze3d.platform.NativeImage;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.BiConsumer;
 import net.minecraft.Util;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.resources.Resource;
 import net.minecraft.server.packs.resources.ResourceProvider;
+import org.jetbrains.annotations.Nullable;
 
 public class TextureManager {
     private final ResourceProvider rm;
-    private final BiConsumer<NativeImage, String> textureWriter;
+    private final BiConsumer<byte[], String> textureWriter;
     private final BiConsumer<JsonElement, String> mcMetaWriter;
-    private final Queue<IORunnable> endRunnables = new ConcurrentLinkedQueue<>();
+    private final Queue<Job> endJobs = new ConcurrentLinkedQueue<>();
+    @Nullable
+    private final TextureCache cache;
+    /**
+     * Content hash of each asset looked up during the current phase, or {@link TextureCache#ABSENT}.
+     */
+    private final Map<String, String> assetHashes = new ConcurrentHashMap<>();
+    /**
+     * Inputs and outputs of the job running on the current thread, if it is being recorded for the cache.
+     */
+    private final ThreadLocal<JobRecorder> currentJob = new ThreadLocal<>();
 
     private final Gson GSON = new Gson();
 
-    public TextureManager(ResourceProvider rm, BiConsumer<NativeImage, String> textureWriter, BiConsumer<JsonElement, String> mcMetaWriter) {
+    TextureManager(ResourceProvider rm, BiConsumer<byte[], String> textureWriter, BiConsumer<JsonElement, String> mcMetaWriter,
+            @Nullable TextureCache cache) {
         this.rm = rm;
         this.textureWriter = textureWriter;
         this.mcMetaWriter = mcMetaWriter;
+        this.cache = cache;
     }
 
     public boolean hasAsset(String asset) {
+        var recorder = currentJob.get();
+        if (recorder != null) {
+            String hash = getAssetHash(asset);
+            recorder.inputs.put(asset, hash);
+            return !hash.equals(TextureCache.ABSENT);
+        }
         return rm.getResource(new ResourceLocation(asset)).isPresent();
     }
 
@@ -59,6 +81,14 @@ public class TextureManager {
         var resource = rm.getResource(new ResourceLocation(textureId));
         if (resource.isPresent()) {
             try (var stream = resource.get().open()) {
+                var recorder = currentJob.get();
+                if (recorder != null) {
+                    byte[] bytes = stream.readAllBytes();
+                    String hash = TextureCache.hash(bytes);
+                    assetHashes.putIfAbsent(textureId, hash);
+                    recorder.inputs.put(textureId, hash);
+                    return NativeImage.read(bytes);
+                }
                 return NativeImage.read(stream);
             }
         } else {
@@ -66,6 +96,23 @@ public class TextureManager {
         }
     }
 
+    /**
+     * Return the content hash of an asset, or {@link TextureCache#ABSENT} if it doesn't exist.
+     */
+    String getAssetHash(String asset) {
+        return assetHashes.computeIfAbsent(asset, id -> {
+            var resource = rm.getResource(new ResourceLocation(id));
+            if (resource.isEmpty()) {
+                return TextureCache.ABSENT;
+            }
+            try (var stream = resource.get().open()) {
+                return TextureCache.hash(stream.readAllBytes());
+            } catch (IOException ex) {
+                return TextureCache.ABSENT;
+            }
+        });
+    }
+
     /**
      * Add texture if it's not already loaded, but doesn't close the image.
      */
@@ -83,16 +130,26 @@ public class TextureManager {
 
         String overrideId = textureId.replace(":textures/", ":datagen_texture_overrides/");
         Optional<Resource> overrideResource = rm.getResource(new ResourceLocation(overrideId));
+        var recorder = currentJob.get();
 
+        byte[] bytes;
         if (overrideResource.isPresent()) {
             // Copy the override over
             try (var stream = overrideResource.get().open();
                     var overrideImage = NativeImage.read(stream)) {
-                textureWriter.accept(overrideImage, textureId);
+                bytes = overrideImage.asByteArray();
             }
         } else {
             // Write generated texture
-            textureWriter.accept(image, textureId);
+            bytes = image.asByteArray();
+        }
+        textureWriter.accept(bytes, textureId);
+
+        if (recorder != null) {
+            recorder.inputs.put(overrideId, getAssetHash(overrideId));
+            String hash = TextureCache.hash(bytes);
+            cache.writeBlob(hash, bytes);
+            recorder.textures.put(textureId, hash);
         }
 
         // Close image in any case...
@@ -102,17 +159,101 @@ public class TextureManager {
     }
 
     public void addMcMeta(String path, MCMetaInfo info) {
-        mcMetaWriter.accept(GSON.toJsonTree(info), path);
+        var json = GSON.toJsonTree(info);
+        mcMetaWriter.accept(json, path);
+
+        var recorder = currentJob.get();
+        if (recorder != null) {
+            recorder.mcMetas.put(path, json);
+        }
+    }
+
+    /**
+     * Run a generation job, or replay its outputs from the cache if none of its inputs changed since it was cached.
+     *
+     * @param key Unique key for the job, which must describe every parameter of the job that is not read through this texture manager.
+     */
+    public void runCached(String key, IORunnable job) throws IOException {
+        if (cache == null) {
+            job.run();
+            return;
+        }
+
+        var entry = cache.get(key);
+        if (entry != null && tryReplay(key, entry)) {
+            return;
+        }
+
+        var recorder = new JobRecorder();
+        currentJob.set(recorder);
+        try {
+            job.run();
+        } finally {
+            currentJob.remove();
+        }
+
+        if (recorder.cacheable) {
+            cache.put(key, new TextureCache.Entry(recorder.inputs, recorder.textures, recorder.mcMetas));
+        } else {
+            cache.skip();
+        }
+    }
+
+    private boolean tryReplay(String key, TextureCache.Entry entry) {
+        for (var input : entry.inputs().entrySet()) {
+            if (!getAssetHash(input.getKey()).equals(input.getValue())) {
+                return false;
+            }
+        }
+
+        Map<String, byte[]> textures = new HashMap<>();
+        for (var texture : entry.textures().entrySet()) {
+            byte[] bytes = cache.readBlob(texture.getValue());
+            if (bytes == null) {
+                return false;
+            }
+            textures.put(texture.getKey(), bytes);
+        }
+
+        textures.forEach((textureId, bytes) -> textureWriter.accept(bytes, textureId));
+        entry.mcMetas().forEach((path, json) -> mcMetaWriter.accept(json, path));
+        cache.keep(key, entry);
+        return true;
     }
 
-    public void runAtEnd(IORunnable runnable) {
-        endRunnables.add(runnable);
+    /**
+     * Run a job once all the first phase jobs are complete.
+     *
+     * @param key Cache key of the job, see {@link #runCached}.
+     */
+    public void runAtEnd(String key, IORunnable runnable) {
+        var recorder = currentJob.get();
+        if (recorder != null) {
+            // A replayed job would not schedule its end job, so the scheduling job must always run.
+            recorder.cacheable = false;
+        }
+        endJobs.add(new Job(key, runnable));
     }
 
     public CompletableFuture<?> doEndWork() {
-        var ret = CompletableFuture.allOf(
-                endRunnables.stream().map(r -> CompletableFuture.runAsync(r::safeRun, Util.backgroundExecutor())).toArray(CompletableFuture[]::new));
-        endRunnables.clear();
+        // The first phase might have changed generated assets.
+        assetHashes.clear();
+
+        var ret = CompletableFuture.allOf(endJobs.stream().map(job -> {
+            IORunnable cachedJob = () -> runCached(job.key(), job.runnable());
+            return CompletableFuture.runAsync(cachedJob::safeRun, Util.backgroundExecutor());
+        }).toArray(CompletableFuture[]::new));
+        endJobs.clear();
         return ret;
     }
+
+    private record Job(String key, IORunnable runnable) {
+    }
+
+    private static class JobRecorder {
+        final Map<String, String> inputs = new HashMap<>();
+        final Map<String, String> textures = new HashMap<>();
+        final Map<String, JsonElement> mcMetas = new HashMap<>();
+        boolean cacheable = true;
+    }
 }
@@ -38,7 +38,7 @@ public class Coloramp implements IColoramp {
     public Coloramp(TextureManager mtm, int meanRGB, String name) {
         this.meanRGB = meanRGB;
 
-        var gradientMapPath = "modern_industrialization:textures/gradient_maps/" + name + ".png";
+        var gradientMapPath = getGradientMapPath(name);
 
         if (mtm.hasAsset(gradientMapPath)) {
             try (NativeImage gradientMap = mtm.getAssetAsTexture(gradientMapPath)) {
@@ -58,6 +58,10 @@ public class Coloramp implements IColoramp {
         }
     }
 
+    public static String getGradientMapPath(String name) {
+        return "modern_industrialization:textures/gradient_maps/" + name + ".png";
+    }
+
     public Coloramp(int meanRGB) {
         this.meanRGB = meanRGB;
         fillUniform();
@@ -81,6 +81,8 @@ public class MIConfig implements ConfigData {
     @ConfigEntry.Gui.RequiresRestart
     @EnglishTranslation(value = "Maximum height of the Distillation Tower multiblock (Restart needed)")
     public int maxDistillationTowerHeight = 9;
+    @EnglishTranslation(value = "Simulate nuclear reactors in parallel, on a dedicated thread pool")
+    public boolean parallelNuclearSimulation = true;
 
     @ConfigEntry.Gui.Excluded
     private transient static boolean registered = false;
@@ -31,15 +31,19 @@ import static net.minecraft.commands.arguments.coordinates.BlockPosArgument.bloc
 import static net.minecraft.commands.arguments.coordinates.BlockPosArgument.getLoadedBlockPos;
 
 import aztech.modern_industrialization.MIConfig;
+import aztech.modern_industrialization.api.machine.holder.CrafterComponentHolder;
 import aztech.modern_industrialization.machines.MachineBlockEntity;
+import aztech.modern_industrialization.machines.components.CrafterComponent;
 import aztech.modern_industrialization.pipes.MIPipes;
 import aztech.modern_industrialization.pipes.api.PipeNetworkType;
 import aztech.modern_industrialization.pipes.impl.PipeNetworks;
+import aztech.modern_industrialization.pipes.item.ItemNetworkScheduler;
 import aztech.modern_industrialization.stats.PlayerStatisticsData;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
+import java.util.Arrays;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.SharedSuggestionProvider;
@@ -65,6 +69,11 @@ public class DebugCommands {
             dispatcher.register(literal("mi")
                     .requires(source -> source.hasPermission(4))
                     .then(literal("pipes")
+                            .then(literal("item_schedule")
+                                    .executes(ctx -> {
+                                        return itemSchedule(ctx.getSource());
+                                    })
+                            )
                             .then(argument("pos", blockPos())
                                     .then(literal("clear")
                                             .executes(ctx -> {
@@ -91,6 +100,13 @@ public class DebugCommands {
                                     return dumpStats(ctx.getSource().getPlayerOrException());
                                 })
                             )
+                            .then(literal("crafter_state")
+                                .then(argument("pos", blockPos())
+                                    .executes(ctx -> {
+                                        return crafterState(ctx.getSource(), getLoadedBlockPos(ctx, "pos"));
+                                    })
+                                )
+                            )
                     )
             );
         });
@@ -137,6 +153,19 @@ public class DebugCommands {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int itemSchedule(CommandSourceStack src) {
+        int[] work = ItemNetworkScheduler.getScheduledWork();
+        int total = 0, max = 0;
+        for (int phaseWork : work) {
+            total += phaseWork;
+            max = Math.max(max, phaseWork);
+        }
+        int finalTotal = total, finalMax = max;
+        src.sendSuccess(() -> Component.literal("Item network work per tick (total %d, max %d): %s".formatted(finalTotal, finalMax,
+                Arrays.toString(work))), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int claimMachines(ServerPlayer player) {
         for (var level : player.server.getAllLevels()) {
             var chunkSource = level.getChunkSource();
@@ -156,6 +185,17 @@ public class DebugCommands {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int crafterState(CommandSourceStack src, BlockPos pos) throws CommandSyntaxException {
+        if (!(src.getLevel().getBlockEntity(pos) instanceof CrafterComponentHolder holder
+                && holder.getCrafterComponent() instanceof CrafterComponent crafter)) {
+            throw new SimpleCommandExceptionType(Component.literal("No crafting machine at position " + pos)).create();
+        }
+
+        src.sendSuccess(() -> Component.literal("Crafter at position %s: active recipe = %s, sleep reason = %s".formatted(pos,
+                crafter.hasActiveRecipe(), crafter.getSleepReason())), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int dumpStats(ServerPlayer player) {
         player.displayClientMessage(Component.literal(
                 PlayerStatisticsData.get(player.server).get(player).toTag().toString()), false);
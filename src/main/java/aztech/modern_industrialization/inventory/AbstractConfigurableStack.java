@@ -51,6 +51,9 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
     protected boolean playerExtract = true;
     protected boolean pipesInsert = false;
     protected boolean pipesExtract = false;
+    // Index of the storage this stack belongs to, if any. See MIStorageIndex.
+    MIStorageIndex<T> storageIndex = null;
+    int storageIndexSlot;
 
     public AbstractConfigurableStack() {
     }
@@ -87,6 +90,15 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
         ChangeListener.notify(listeners);
     }
 
+    /**
+     * Must be called whenever the resource, the amount or the locked instance of this stack changes.
+     */
+    protected void onIndexedStateChanged() {
+        if (storageIndex != null) {
+            storageIndex.update(storageIndexSlot);
+        }
+    }
+
     public void addListener(ChangeListener listener, Object token) {
         listeners.put(listener, token);
     }
@@ -134,6 +146,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
         if (amount == 0) {
             this.key = getBlankVariant();
         }
+        onIndexedStateChanged();
         notifyListeners();
     }
 
@@ -151,6 +164,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
 
     public void setKey(K key) {
         this.key = key;
+        onIndexedStateChanged();
         notifyListeners();
     }
 
@@ -183,6 +197,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
             throw new RuntimeException("Trying to override locked instance");
         machineLocked = true;
         this.lockedInstance = lockedInstance;
+        onIndexedStateChanged();
         notifyListeners();
     }
 
@@ -223,6 +238,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
         } else if (lockedInstance == null) {
             lockedInstance = key.getObject();
         }
+        onIndexedStateChanged();
         notifyListeners();
     }
 
@@ -242,6 +258,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
                     if (stack.key.isOf(instance) || (stack.isResourceBlank() && allowEmptyStacks)) {
                         stack.lockedInstance = instance;
                         stack.playerLocked = true;
+                        stack.onIndexedStateChanged();
                         return;
                     }
                 }
@@ -257,6 +274,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
             if (simulation.isActing()) {
                 lockedInstance = instance;
                 playerLocked = true;
+                onIndexedStateChanged();
             }
             return true;
         }
@@ -319,6 +337,7 @@ public abstract class AbstractConfigurableStack<T, K extends TransferVariant<T>>
     public void readSnapshot(ResourceAmount<K> ra) {
         this.amount = ra.amount();
         this.key = ra.resource();
+        onIndexedStateChanged();
     }
 
     @Override
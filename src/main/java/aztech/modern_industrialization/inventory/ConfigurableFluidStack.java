@@ -181,8 +181,10 @@ public class ConfigurableFluidStack extends AbstractConfigurableStack<Fluid, Flu
     public void setCapacity(long capacity) {
         Preconditions.checkArgument(capacity >= 0, "Fluid Capacity must be > 0");
         this.capacity = capacity;
-        if (amount > capacity)
+        if (amount > capacity) {
             amount = capacity;
+            onIndexedStateChanged();
+        }
     }
 
     public long getRemainingSpace() {
@@ -227,6 +227,7 @@ public class ConfigurableItemStack extends AbstractConfigurableStack<Item, ItemV
         protected void setRealStack(ItemStack stack) {
             key = ItemVariant.of(stack);
             amount = stack.getCount();
+            onIndexedStateChanged();
             notifyListeners();
             markDirty.run();
         }
@@ -61,6 +61,8 @@ public final class MIInventory implements IComponent {
         // Must be array lists to allow using .set() in readNbt()
         this.itemStorage = new MIItemStorage(new ArrayList<>(itemStacks));
         this.fluidStorage = new MIFluidStorage(new ArrayList<>(fluidStacks));
+        this.itemStorage.enableIndex();
+        this.fluidStorage.enableIndex();
         this.itemPositions = itemPositions;
         this.fluidPositions = fluidPositions;
         if (itemPositions.size() != itemStacks.size()) {
@@ -140,6 +142,8 @@ public final class MIInventory implements IComponent {
 
         SlotConfig.readSlotList(itemStorage.stacks, newItemStacks);
         SlotConfig.readSlotList(fluidStorage.stacks, newFluidStacks);
+        itemStorage.rebuildIndex();
+        fluidStorage.rebuildIndex();
     }
 
     static {
@@ -31,16 +31,48 @@ import net.fabricmc.fabric.api.transfer.v1.storage.StoragePreconditions;
 import net.fabricmc.fabric.api.transfer.v1.storage.StorageView;
 import net.fabricmc.fabric.api.transfer.v1.storage.TransferVariant;
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import org.jetbrains.annotations.Nullable;
 
 public class MIStorage<T, K extends TransferVariant<T>, S extends AbstractConfigurableStack<T, K>> implements Storage<K> {
+    /**
+     * Below this many slots, scanning all of them is cheap enough.
+     */
+    private static final int INDEX_MIN_SLOTS = 8;
+
     final List<S> stacks;
     private final boolean oneSlotPerResource; // true for fluids, false for items
+    /**
+     * Only built for long-lived storages with enough slots, see {@link #enableIndex()}.
+     */
+    @Nullable
+    private MIStorageIndex<T> index = null;
 
     protected MIStorage(List<S> stacks, boolean oneSlotPerResource) {
         this.stacks = stacks;
         this.oneSlotPerResource = oneSlotPerResource;
     }
 
+    /**
+     * Index the slots of this storage by resource, so that insert and extract don't have to scan every slot.
+     * Only call this for storages that own their stacks, since each stack can only belong to one index.
+     */
+    void enableIndex() {
+        if (index == null && stacks.size() >= INDEX_MIN_SLOTS) {
+            index = MIStorageIndex.create(stacks);
+        }
+    }
+
+    /**
+     * Must be called after stacks have been replaced in the list.
+     */
+    void rebuildIndex() {
+        if (index != null) {
+            index.release();
+            index = null;
+            enableIndex();
+        }
+    }
+
     /**
      * @param filter    Return false to skip some configurable stacks.
      * @param lockSlots Whether to lock slots or not.
@@ -50,8 +82,13 @@ public class MIStorage<T, K extends TransferVariant<T>, S extends AbstractConfig
         boolean containsResourceAlready = false;
         long totalInserted = 0;
 
-        outer: for (int iter = 0; iter < 2; ++iter) {
-            for (S stack : stacks) {
+        // Every slot that is not a candidate can neither accept nor contain the resource, so skipping it is the same as a full scan.
+        int[] candidates = index == null ? null : index.getInsertCandidates(resource.getObject());
+        int slotCount = candidates == null ? stacks.size() : candidates.length;
+
+        for (int iter = 0; iter < 2; ++iter) {
+            for (int i = 0; i < slotCount; ++i) {
+                S stack = stacks.get(candidates == null ? i : candidates[i]);
                 if (!filter.test(stack))
                     continue;
                 boolean isSlotEmpty = stack.getAmount() == 0 && stack.getLockedInstance() == null;
@@ -107,12 +144,15 @@ public class MIStorage<T, K extends TransferVariant<T>, S extends AbstractConfig
 
     public long extract(K resource, long maxAmount, TransactionContext transaction, Predicate<? super S> filter) {
         StoragePreconditions.notBlankNotNegative(resource, maxAmount);
+        int[] candidates = index == null ? null : index.getExtractCandidates(resource.getObject());
+        int slotCount = candidates == null ? stacks.size() : candidates.length;
         long amount = 0;
-        for (int i = 0; i < stacks.size() && amount < maxAmount; ++i) {
-            if (!filter.test(stacks.get(i))) {
+        for (int i = 0; i < slotCount && amount < maxAmount; ++i) {
+            S stack = stacks.get(candidates == null ? i : candidates[i]);
+            if (!filter.test(stack)) {
                 continue;
             }
-            amount += stacks.get(i).extract(resource, maxAmount - amount, transaction);
+            amount += stack.extract(resource, maxAmount - amount, transaction);
         }
         return amount;
     }
@@ -127,12 +167,15 @@ public class MIStorage<T, K extends TransferVariant<T>, S extends AbstractConfig
      */
     public long extractAllSlot(K resource, long maxAmount, TransactionContext transaction, Predicate<? super S> filter) {
         StoragePreconditions.notBlankNotNegative(resource, maxAmount);
+        int[] candidates = index == null ? null : index.getExtractCandidates(resource.getObject());
+        int slotCount = candidates == null ? stacks.size() : candidates.length;
         long amount = 0;
-        for (int i = 0; i < stacks.size() && amount < maxAmount; ++i) {
-            if (!filter.test(stacks.get(i))) {
+        for (int i = 0; i < slotCount && amount < maxAmount; ++i) {
+            S stack = stacks.get(candidates == null ? i : candidates[i]);
+            if (!filter.test(stack)) {
                 continue;
             }
-            amount += stacks.get(i).extractDirect(resource, maxAmount - amount, transaction);
+            amount += stack.extractDirect(resource, maxAmount - amount, transaction);
         }
         return amount;
     }
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.inventory;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Slot index of an {@link MIStorage}, so that insert and extract only visit the slots that can possibly match a resource.
+ *
+ * <p>
+ * Every slot is filed under the instance of its current resource (if any) and under its locked instance (if any).
+ * Slots with no amount and no lock are kept in a separate free list. All slot lists are kept sorted,
+ * so that candidates are visited in the same order as a full scan would.
+ *
+ * <p>
+ * Stacks report their own changes through {@link AbstractConfigurableStack#onIndexedStateChanged()},
+ * including when a transaction is rolled back, so the index never needs to be rebuilt from scratch.
+ */
+final class MIStorageIndex<T> {
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final List<? extends AbstractConfigurableStack<T, ?>> stacks;
+    private final Reference2ObjectOpenHashMap<T, IntArrayList> slotsByInstance = new Reference2ObjectOpenHashMap<>();
+    private final IntArrayList emptySlots = new IntArrayList();
+    // What each slot is currently filed under.
+    private final Object[] indexedResource;
+    private final Object[] indexedLock;
+    private final boolean[] indexedEmpty;
+
+    private MIStorageIndex(List<? extends AbstractConfigurableStack<T, ?>> stacks) {
+        this.stacks = stacks;
+        this.indexedResource = new Object[stacks.size()];
+        this.indexedLock = new Object[stacks.size()];
+        this.indexedEmpty = new boolean[stacks.size()];
+    }
+
+    /**
+     * Build an index for the given stacks, or return null if one of them is already indexed by another storage.
+     */
+    @Nullable
+    static <T> MIStorageIndex<T> create(List<? extends AbstractConfigurableStack<T, ?>> stacks) {
+        for (var stack : stacks) {
+            if (stack.storageIndex != null) {
+                return null;
+            }
+        }
+
+        MIStorageIndex<T> index = new MIStorageIndex<>(stacks);
+        for (int slot = 0; slot < stacks.size(); ++slot) {
+            var stack = stacks.get(slot);
+            stack.storageIndex = index;
+            stack.storageIndexSlot = slot;
+            index.add(slot);
+        }
+        return index;
+    }
+
+    /**
+     * Detach this index from the stacks that still reference it.
+     */
+    void release() {
+        for (var stack : stacks) {
+            if (stack.storageIndex == this) {
+                stack.storageIndex = null;
+            }
+        }
+    }
+
+    void update(int slot) {
+        var stack = stacks.get(slot);
+        if (indexedResource[slot] != resourceInstance(stack) || indexedLock[slot] != stack.getLockedInstance()
+                || indexedEmpty[slot] != isEmptySlot(stack)) {
+            remove(slot);
+            add(slot);
+        }
+    }
+
+    /**
+     * Slots that might accept or already contain the given instance, in ascending order.
+     */
+    int[] getInsertCandidates(T instance) {
+        IntArrayList matching = slotsByInstance.get(instance);
+        if (matching == null) {
+            return emptySlots.toIntArray();
+        }
+
+        // Merge the two sorted lists, skipping slots that are in both.
+        int[] result = new int[matching.size() + emptySlots.size()];
+        int i = 0, j = 0, k = 0;
+        while (i < matching.size() && j < emptySlots.size()) {
+            int a = matching.getInt(i), b = emptySlots.getInt(j);
+            if (a <= b) {
+                result[k++] = a;
+                i++;
+                if (a == b) {
+                    j++;
+                }
+            } else {
+                result[k++] = b;
+                j++;
+            }
+        }
+        while (i < matching.size()) {
+            result[k++] = matching.getInt(i++);
+        }
+        while (j < emptySlots.size()) {
+            result[k++] = emptySlots.getInt(j++);
+        }
+        return k == result.length ? result : Arrays.copyOf(result, k);
+    }
+
+    /**
+     * Slots that might contain the given instance, in ascending order.
+     */
+    int[] getExtractCandidates(T instance) {
+        IntArrayList matching = slotsByInstance.get(instance);
+        return matching == null ? NO_SLOTS : matching.toIntArray();
+    }
+
+    private void add(int slot) {
+        var stack = stacks.get(slot);
+        T resource = resourceInstance(stack);
+        T lock = stack.getLockedInstance();
+        boolean empty = isEmptySlot(stack);
+
+        if (resource != null) {
+            addSorted(slotsByInstance.computeIfAbsent(resource, r -> new IntArrayList()), slot);
+        }
+        if (lock != null && lock != resource) {
+            addSorted(slotsByInstance.computeIfAbsent(lock, r -> new IntArrayList()), slot);
+        }
+        if (empty) {
+            addSorted(emptySlots, slot);
+        }
+
+        indexedResource[slot] = resource;
+        indexedLock[slot] = lock;
+        indexedEmpty[slot] = empty;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void remove(int slot) {
+        T resource = (T) indexedResource[slot];
+        T lock = (T) indexedLock[slot];
+
+        if (resource != null) {
+            removeFromInstance(resource, slot);
+        }
+        if (lock != null && lock != resource) {
+            removeFromInstance(lock, slot);
+        }
+        if (indexedEmpty[slot]) {
+            removeSorted(emptySlots, slot);
+        }
+    }
+
+    private void removeFromInstance(T instance, int slot) {
+        IntArrayList slots = slotsByInstance.get(instance);
+        removeSorted(slots, slot);
+        if (slots.isEmpty()) {
+            // Don't keep lists around for every resource that ever passed through.
+            slotsByInstance.remove(instance);
+        }
+    }
+
+    @Nullable
+    private static <T> T resourceInstance(AbstractConfigurableStack<T, ?> stack) {
+        return stack.isResourceBlank() ? null : stack.getResource().getObject();
+    }
+
+    private static boolean isEmptySlot(AbstractConfigurableStack<?, ?> stack) {
+        return stack.getAmount() == 0 && stack.getLockedInstance() == null;
+    }
+
+    private static void addSorted(IntArrayList list, int slot) {
+        int pos = IntArrays.binarySearch(list.elements(), 0, list.size(), slot);
+        if (pos < 0) {
+            list.add(-pos - 1, slot);
+        }
+    }
+
+    private static void removeSorted(IntArrayList list, int slot) {
+        int pos = IntArrays.binarySearch(list.elements(), 0, list.size(), slot);
+        if (pos >= 0) {
+            list.removeInt(pos);
+        }
+    }
+}
@@ -100,6 +100,14 @@ public abstract class AbstractCraftingMachineBlockEntity extends MachineBlockEnt
         }
     }
 
+    @Override
+    public void setRemoved() {
+        super.setRemoved();
+        if (!level.isClientSide) {
+            crafter.clearConditionCache();
+        }
+    }
+
     @Override
     public MIInventory getInventory() {
         return inventory.inventory;
@@ -116,7 +116,7 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
         this.clearMachineLock();
 
         if (isFluid) {
-            fluidNeutronProductTick(1, true);
+            fluidNeutronProductTick(1, true, this.level.getRandom());
         } else {
             ItemVariant itemVariant = (ItemVariant) this.getVariant();
             if (!itemVariant.isBlank() && itemVariant.getItem() instanceof NuclearAbsorbable abs) {
@@ -137,6 +137,11 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
         return nuclearReactorComponent.getTemperature();
     }
 
+    @Override
+    public double getMaxTemperature() {
+        return nuclearReactorComponent.temperatureMax;
+    }
+
     @Override
     public double getHeatTransferCoeff() {
         @Nullable
@@ -197,11 +202,16 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
     public void putHeat(double eu) {
         Preconditions.checkArgument(eu >= 0);
         setTemperature(getTemperature() + eu / NuclearConstant.EU_PER_DEGREE);
+        recordEuGeneration(eu);
+    }
+
+    @Override
+    public void recordEuGeneration(double eu) {
         neutronHistory.addValue(euGeneration, (int) eu);
     }
 
     @Override
-    public int neutronGenerationTick(NuclearEfficiencyHistoryComponent efficiencyHistory) {
+    public int neutronGenerationTick(NuclearEfficiencyHistoryComponent efficiencyHistory, RandomSource rand) {
         double meanNeutron = getMeanNeutronAbsorption(NeutronType.BOTH);
         int neutronsProduced = 0;
 
@@ -216,8 +226,6 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
 
                 ItemStack stack = itemVariant.toStack((int) getVariantAmount());
 
-                var rand = this.level.getRandom();
-
                 if (abs instanceof NuclearFuel fuel) {
                     neutronsProduced = fuel.simulateDesintegration(meanNeutron, stack, this.nuclearReactorComponent.getTemperature(), rand,
                             efficiencyHistory);
@@ -262,7 +270,7 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
         return (int) Math.floor(value) + (rand.nextDouble() < (value % 1) ? 1 : 0);
     }
 
-    public void fluidNeutronProductTick(int neutron, boolean simul) {
+    public void fluidNeutronProductTick(int neutron, boolean simul, RandomSource rand) {
         if (isFluid) {
             @Nullable
             INuclearComponent<FluidVariant> component = (INuclearComponent<FluidVariant>) this.getComponent();
@@ -271,7 +279,7 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
                 return;
             }
 
-            int actualRecipe = randIntFromDouble(neutron * component.getNeutronProductProbability(), this.getLevel().getRandom());
+            int actualRecipe = randIntFromDouble(neutron * component.getNeutronProductProbability(), rand);
 
             if (simul) {
                 actualRecipe = neutron;
@@ -306,9 +314,9 @@ public class NuclearHatch extends HatchBlockEntity implements INuclearTile {
     }
 
     @Override
-    public void nuclearTick(NuclearEfficiencyHistoryComponent efficiencyHistory) {
+    public void nuclearTick(NuclearEfficiencyHistoryComponent efficiencyHistory, RandomSource rand) {
         neutronHistory.tick();
-        fluidNeutronProductTick(randIntFromDouble(neutronHistory.getAverageReceived(NeutronType.BOTH), this.getLevel().getRandom()), false);
+        fluidNeutronProductTick(randIntFromDouble(neutronHistory.getAverageReceived(NeutronType.BOTH), rand), false, rand);
 
         if (isFluid) {
             double euProduced = ((SteamHeaterComponent) nuclearReactorComponent).tick(Collections.singletonList(inventory.getFluidStacks().get(0)),
@@ -154,6 +154,7 @@ public abstract class AbstractCraftingMultiblockBlockEntity extends MultiblockMa
             shapeMatcher.unregisterListeners(level);
             shapeMatcher = null;
         }
+        crafter.clearConditionCache();
     }
 
     private enum OperatingState {
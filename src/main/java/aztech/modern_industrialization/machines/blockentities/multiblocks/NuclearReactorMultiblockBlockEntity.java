@@ -44,6 +44,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
 import net.minecraft.core.Direction;
+import net.minecraft.util.RandomSource;
 
 public class NuclearReactorMultiblockBlockEntity extends MultiblockMachineBlockEntity implements Tickable {
 
@@ -61,6 +62,10 @@ public class NuclearReactorMultiblockBlockEntity extends MultiblockMachineBlockE
     private ShapeMatcher shapeMatcher;
 
     private NuclearGrid nuclearGrid;
+    /**
+     * Provides the seed of every simulated tick.
+     */
+    private final RandomSource seedSource = RandomSource.create();
     private Supplier<NuclearReactorGui.Data> dataSupplier;
 
     public NuclearReactorMultiblockBlockEntity(BEP bep) {
@@ -113,7 +118,19 @@ public class NuclearReactorMultiblockBlockEntity extends MultiblockMachineBlockE
             link();
             if (shapeValid.shapeValid) {
                 if (redstoneControl.doAllowNormalOperation(this)) {
-                    isActive.updateActive(NuclearGridHelper.simulate(nuclearGrid, efficiencyHistory), this);
+                    if (NuclearSimulationScheduler.isEnabled()) {
+                        NuclearGrid grid = nuclearGrid;
+                        boolean hasFuel = NuclearGridHelper.prepare(grid, efficiencyHistory, seedSource.nextLong());
+                        NuclearSimulationScheduler.schedule(() -> NuclearGridHelper.compute(grid), () -> {
+                            if (!isRemoved()) {
+                                NuclearGridHelper.finish(grid, efficiencyHistory);
+                                isActive.updateActive(hasFuel, this);
+                                efficiencyHistory.tick();
+                            }
+                        });
+                        return;
+                    }
+                    isActive.updateActive(NuclearGridHelper.simulate(nuclearGrid, efficiencyHistory, seedSource.nextLong()), this);
                 } else {
                     isActive.updateActive(false, this);
                 }
@@ -41,7 +41,6 @@ import aztech.modern_industrialization.stats.PlayerStatistics;
 import aztech.modern_industrialization.stats.PlayerStatisticsData;
 import aztech.modern_industrialization.util.Simulation;
 import com.google.common.base.Preconditions;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -49,6 +48,7 @@ import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 import net.fabricmc.fabric.api.transfer.v1.fluid.FluidVariant;
 import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.fabricmc.fabric.api.transfer.v1.storage.TransferVariant;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
@@ -56,16 +56,18 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.material.Fluid;
 import org.jetbrains.annotations.Nullable;
 
 public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
     private final MachineProcessCondition.Context conditionContext;
+    private final ProcessConditionCache conditionCache;
 
     public CrafterComponent(MachineBlockEntity blockEntity, Inventory inventory, Behavior behavior) {
         this.inventory = inventory;
         this.behavior = behavior;
         this.conditionContext = () -> blockEntity;
+        this.conditionCache = new ProcessConditionCache(conditionContext, this::wakeUp);
+        inventory.addChangeCallback(this::wakeUp);
     }
 
     public interface Inventory extends InventoryAccess {
@@ -77,7 +79,10 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
 
         List<ConfigurableFluidStack> getFluidOutputs();
 
-        int hash();
+        /**
+         * Register a callback that is invoked every time the contents or the slots of this inventory change.
+         */
+        void addChangeCallback(Runnable callback);
     }
 
     public interface Behavior {
@@ -133,8 +138,54 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
     private long previousBaseEu = -1;
     private long previousMaxEu = -1;
 
-    private int lastInvHash = 0;
-    private int lastForcedTick = 0;
+    /**
+     * Why the crafter is not processing a recipe, for debugging purposes.
+     */
+    public enum SleepReason {
+        /**
+         * Not sleeping: processing a recipe, or about to look for one.
+         */
+        NONE,
+        /**
+         * The machine is disabled, for example by redstone.
+         */
+        DISABLED,
+        /**
+         * Not enough energy to start or continue a recipe.
+         */
+        NO_ENERGY,
+        /**
+         * No recipe could start, sleeping until the inventory, the max recipe EU or the recipes change.
+         */
+        NO_MATCHING_RECIPE,
+        /**
+         * A recipe could start but its process conditions don't match, sleeping until they might have changed.
+         * Conditions that can't be cached are retried periodically.
+         */
+        PROCESS_CONDITIONS,
+    }
+
+    private static final int CONDITION_RETRY_TICKS = 100;
+
+    private SleepReason sleepReason = SleepReason.NONE;
+    /**
+     * Result of the last unsuccessful recipe scan.
+     */
+    private SleepReason scanSleepReason = SleepReason.NONE;
+    /**
+     * Set every time something that could allow a recipe to start happens.
+     */
+    private boolean needsRecipeScan = true;
+    private long sleepMaxRecipeEu;
+    private int sleepRecipeGeneration;
+    private int conditionRetryTicks;
+    private boolean conditionsBlockedRecipe;
+    private boolean conditionsNeedPolling;
+
+    // Scratch state to simulate recipes without copying the stacks, see loadScratch.
+    private long[] scratchAmounts = new long[0];
+    private TransferVariant<?>[] scratchResources = new TransferVariant<?>[0];
+    private boolean[] scratchInserted = new boolean[0];
 
     @Override
     public float getProgress() {
@@ -164,6 +215,24 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
         return behavior;
     }
 
+    public SleepReason getSleepReason() {
+        return sleepReason;
+    }
+
+    /**
+     * Force the crafter to look for a recipe again, even if nothing changed in its inventory.
+     */
+    public void wakeUp() {
+        needsRecipeScan = true;
+    }
+
+    /**
+     * Drop the cached process condition results and stop listening to block updates, for example when the machine is removed.
+     */
+    public void clearConditionCache() {
+        conditionCache.clear();
+    }
+
     public void decreaseEfficiencyTicks() {
         efficiencyTicks = Math.max(efficiencyTicks - 1, 0);
         clearActiveRecipeIfPossible();
@@ -201,22 +270,22 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
         // START RECIPE IF NECESSARY
         // usedEnergy == 0 means that no recipe is currently started
         boolean recipeStarted = false;
-        if (usedEnergy == 0 && isEnabled) {
+        if (!isEnabled) {
+            sleepReason = SleepReason.DISABLED;
+        } else if (usedEnergy == 0) {
             if (behavior.consumeEu(1, SIMULATE) == 1) {
                 recipeStarted = updateActiveRecipe();
+            } else {
+                sleepReason = SleepReason.NO_ENERGY;
             }
         }
 
-        if (activeRecipe != null) {
-            lastForcedTick = 0;
-        }
-
         // PROCESS RECIPE TICK
         long eu = 0;
         boolean finishedRecipe = false; // whether the recipe finished this tick
         if (activeRecipe != null && (usedEnergy > 0 || recipeStarted) && isEnabled) {
             recipeMaxEu = getRecipeMaxEu(activeRecipe.eu, recipeEnergy, efficiencyTicks);
-            eu = activeRecipe.conditionsMatch(conditionContext) ? behavior.consumeEu(Math.min(recipeMaxEu, recipeEnergy - usedEnergy), ACT) : 0;
+            eu = conditionCache.conditionsMatch(activeRecipe) ? behavior.consumeEu(Math.min(recipeMaxEu, recipeEnergy - usedEnergy), ACT) : 0;
             isActive = eu > 0;
             usedEnergy += eu;
 
@@ -300,6 +369,16 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
     }
 
     private boolean updateActiveRecipe() {
+        // When looking for a new recipe, only scan if something changed since the last unsuccessful scan
+        boolean scanning = efficiencyTicks == 0;
+        if (scanning && !shouldScanRecipes()) {
+            sleepReason = scanSleepReason;
+            return false;
+        }
+
+        sleepReason = SleepReason.NONE;
+        conditionsBlockedRecipe = false;
+        conditionsNeedPolling = false;
         // Only then can we run the iteration over the recipes
         for (MachineRecipe recipe : getRecipes()) {
             if (behavior.banRecipe(recipe))
@@ -318,34 +397,44 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
                 return true;
             }
         }
+
+        if (scanning) {
+            // Sleep until something changes
+            needsRecipeScan = false;
+            sleepMaxRecipeEu = behavior.getMaxRecipeEu();
+            sleepRecipeGeneration = MachineRecipeType.getRecipeGeneration();
+            scanSleepReason = conditionsBlockedRecipe ? SleepReason.PROCESS_CONDITIONS : SleepReason.NO_MATCHING_RECIPE;
+            conditionRetryTicks = CONDITION_RETRY_TICKS;
+            sleepReason = scanSleepReason;
+        }
         return false;
     }
 
+    private boolean shouldScanRecipes() {
+        if (needsRecipeScan) {
+            return true;
+        }
+        // Upgrades or casings can change which recipes are banned
+        if (sleepMaxRecipeEu != behavior.getMaxRecipeEu() || sleepRecipeGeneration != MachineRecipeType.getRecipeGeneration()) {
+            return true;
+        }
+        if (scanSleepReason != SleepReason.PROCESS_CONDITIONS) {
+            return false;
+        }
+        // Cached conditions wake the crafter up when they are invalidated, but not when the machine is rotated or moved to another level
+        if (conditionCache.isStale()) {
+            return true;
+        }
+        // The other conditions have to be polled
+        return conditionsNeedPolling && --conditionRetryTicks <= 0;
+    }
+
     private Iterable<MachineRecipe> getRecipes() {
         if (efficiencyTicks > 0) {
             return Collections.singletonList(activeRecipe);
         } else {
-            int currentHash = inventory.hash();
-            if (currentHash == lastInvHash) {
-                if (lastForcedTick == 0) {
-                    lastForcedTick = 100;
-                } else {
-                    --lastForcedTick;
-                    return Collections.emptyList();
-                }
-            } else {
-                lastInvHash = currentHash;
-            }
-
             ServerLevel serverWorld = (ServerLevel) behavior.getCrafterWorld();
-            MachineRecipeType recipeType = behavior.recipeType();
-            List<MachineRecipe> recipes = new ArrayList<>(recipeType.getFluidOnlyRecipes(serverWorld));
-            for (ConfigurableItemStack stack : inventory.getItemInputs()) {
-                if (!stack.isEmpty()) {
-                    recipes.addAll(recipeType.getMatchingRecipes(serverWorld, stack.getResource().getItem()));
-                }
-            }
-            return recipes;
+            return behavior.recipeType().getCandidateRecipes(serverWorld, inventory.getItemInputs(), inventory.getFluidInputs());
         }
     }
 
@@ -355,7 +444,12 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
      */
     private boolean tryStartRecipe(MachineRecipe recipe) {
         if (takeItemInputs(recipe, true) && takeFluidInputs(recipe, true) && putItemOutputs(recipe, true, false)
-                && putFluidOutputs(recipe, true, false) && recipe.conditionsMatch(conditionContext)) {
+                && putFluidOutputs(recipe, true, false)) {
+            if (!conditionCache.conditionsMatch(recipe)) {
+                conditionsBlockedRecipe = true;
+                conditionsNeedPolling |= !ProcessConditionCache.isCacheable(recipe);
+                return false;
+            }
             takeItemInputs(recipe, false);
             takeFluidInputs(recipe, false);
             putItemOutputs(recipe, true, true);
@@ -410,13 +504,49 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
         this.maxEfficiencyTicks = tag.getInt("maxEfficiencyTicks");
     }
 
+    /**
+     * Load the amounts and resources of the given stacks into the scratch arrays.
+     * Recipes are simulated against these arrays instead of copies of the stacks.
+     */
+    private void loadScratch(List<? extends AbstractConfigurableStack<?, ?>> stacks) {
+        int size = stacks.size();
+        if (scratchAmounts.length < size) {
+            scratchAmounts = new long[size];
+            scratchResources = new TransferVariant<?>[size];
+            scratchInserted = new boolean[size];
+        }
+        for (int i = 0; i < size; ++i) {
+            AbstractConfigurableStack<?, ?> stack = stacks.get(i);
+            scratchAmounts[i] = stack.getAmount();
+            scratchResources[i] = stack.getResource();
+            scratchInserted[i] = false;
+        }
+    }
+
+    /**
+     * Write the scratch arrays back to the stacks that changed.
+     */
+    @SuppressWarnings("unchecked")
+    private <K extends TransferVariant<?>> void storeScratch(List<? extends AbstractConfigurableStack<?, K>> stacks) {
+        for (int i = 0; i < stacks.size(); ++i) {
+            AbstractConfigurableStack<?, K> stack = stacks.get(i);
+            K resource = (K) scratchResources[i];
+            if (!resource.equals(stack.getResource())) {
+                stack.setAmount(scratchAmounts[i]);
+                stack.setKey(resource);
+            } else if (scratchAmounts[i] != stack.getAmount()) {
+                stack.setAmount(scratchAmounts[i]);
+            }
+        }
+    }
+
     /**
      * cachedItemCounts must be correct when this function is called, and are
      * guaranteed to be correct after this call
      */
     private boolean takeItemInputs(MachineRecipe recipe, boolean simulate) {
-        List<ConfigurableItemStack> baseList = inventory.getItemInputs();
-        List<ConfigurableItemStack> stacks = simulate ? ConfigurableItemStack.copyList(baseList) : baseList;
+        List<ConfigurableItemStack> stacks = inventory.getItemInputs();
+        loadScratch(stacks);
 
         boolean ok = true;
         for (MachineRecipe.ItemInput input : recipe.itemInputs) {
@@ -426,13 +556,14 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
                 }
             }
             int remainingAmount = input.amount;
-            for (ConfigurableItemStack stack : stacks) {
-                if (stack.getAmount() > 0 && input.matches(stack.getResource().toStack())) { // TODO: ItemStack creation slow?
-                    int taken = Math.min((int) stack.getAmount(), remainingAmount);
+            for (int i = 0; i < stacks.size(); ++i) {
+                ConfigurableItemStack stack = stacks.get(i);
+                if (scratchAmounts[i] > 0 && input.matches(stack.getResource())) {
+                    int taken = (int) Math.min(scratchAmounts[i], remainingAmount);
                     if (taken > 0 && !simulate) {
                         behavior.getStatsOrDummy().addUsedItems(stack.getResource().getItem(), taken);
                     }
-                    stack.decrement(taken);
+                    scratchAmounts[i] -= taken;
                     remainingAmount -= taken;
                     if (remainingAmount == 0)
                         break;
@@ -442,12 +573,15 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
                 ok = false;
         }
 
+        if (!simulate) {
+            storeScratch(stacks);
+        }
         return ok;
     }
 
     protected boolean takeFluidInputs(MachineRecipe recipe, boolean simulate) {
-        List<ConfigurableFluidStack> baseList = inventory.getFluidInputs();
-        List<ConfigurableFluidStack> stacks = simulate ? ConfigurableFluidStack.copyList(baseList) : baseList;
+        List<ConfigurableFluidStack> stacks = inventory.getFluidInputs();
+        loadScratch(stacks);
 
         boolean ok = true;
         for (MachineRecipe.FluidInput input : recipe.fluidInputs) {
@@ -457,13 +591,14 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
                 }
             }
             long remainingAmount = input.amount;
-            for (ConfigurableFluidStack stack : stacks) {
+            for (int i = 0; i < stacks.size(); ++i) {
+                ConfigurableFluidStack stack = stacks.get(i);
                 if (stack.getResource().equals(FluidVariant.of(input.fluid))) {
-                    long taken = Math.min(remainingAmount, stack.getAmount());
+                    long taken = Math.min(remainingAmount, scratchAmounts[i]);
                     if (taken > 0 && !simulate) {
                         behavior.getStatsOrDummy().addUsedFluids(stack.getResource().getFluid(), taken);
                     }
-                    stack.decrement(taken);
+                    scratchAmounts[i] -= taken;
                     remainingAmount -= taken;
                     if (remainingAmount == 0)
                         break;
@@ -472,15 +607,16 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
             if (remainingAmount > 0)
                 ok = false;
         }
+
+        if (!simulate) {
+            storeScratch(stacks);
+        }
         return ok;
     }
 
     protected boolean putItemOutputs(MachineRecipe recipe, boolean simulate, boolean toggleLock) {
-        List<ConfigurableItemStack> baseList = inventory.getItemOutputs();
-        List<ConfigurableItemStack> stacks = simulate ? ConfigurableItemStack.copyList(baseList) : baseList;
-
-        List<Integer> locksToToggle = new ArrayList<>();
-        List<Item> lockItems = new ArrayList<>();
+        List<ConfigurableItemStack> stacks = inventory.getItemOutputs();
+        loadScratch(stacks);
 
         boolean ok = true;
         for (MachineRecipe.ItemOutput output : recipe.itemOutputs) {
@@ -495,31 +631,32 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
             // Try to insert in non-empty stacks or locked first, then also allow insertion
             // in empty stacks.
             for (int loopRun = 0; loopRun < 2; loopRun++) {
-                int stackId = 0;
-                for (ConfigurableItemStack stack : stacks) {
-                    stackId++;
-                    ItemVariant key = stack.getResource();
+                for (int i = 0; i < stacks.size(); ++i) {
+                    ConfigurableItemStack stack = stacks.get(i);
+                    ItemVariant key = (ItemVariant) scratchResources[i];
                     if (key.getItem() == output.item || key.isBlank()) {
                         // If simulating or chanced output, respect the adjusted capacity.
                         // If putting the output, don't respect the adjusted capacity in case it was
                         // reduced during the processing.
-                        int remainingCapacity = simulate || output.probability < 1 ? (int) stack.getRemainingCapacityFor(ItemVariant.of(output.item))
-                                : output.item.getMaxStackSize() - (int) stack.getAmount();
+                        // (Setting a larger amount raises the adjusted capacity, hence the max.)
+                        int amount = (int) scratchAmounts[i];
+                        int remainingCapacity = simulate || output.probability < 1
+                                ? Math.min(output.item.getMaxStackSize(), Math.max(stack.getAdjustedCapacity(), amount)) - amount
+                                : output.item.getMaxStackSize() - amount;
                         int ins = Math.min(remainingAmount, remainingCapacity);
                         if (key.isBlank()) {
-                            if ((stack.isMachineLocked() || stack.isPlayerLocked() || loopRun == 1) && stack.isValid(new ItemStack(output.item))) {
-                                stack.setAmount(ins);
-                                stack.setKey(ItemVariant.of(output.item));
+                            if ((stack.isMachineLocked() || stack.isPlayerLocked() || loopRun == 1) && stack.isResourceAllowedByLock(output.item)) {
+                                scratchAmounts[i] = ins;
+                                scratchResources[i] = ItemVariant.of(output.item);
                             } else {
                                 ins = 0;
                             }
                         } else {
-                            stack.increment(ins);
+                            scratchAmounts[i] += ins;
                         }
                         remainingAmount -= ins;
                         if (ins > 0) {
-                            locksToToggle.add(stackId - 1);
-                            lockItems.add(output.item);
+                            scratchInserted[i] = true;
                             if (!simulate) {
                                 behavior.getStatsOrDummy().addProducedItems(output.item, ins);
                             }
@@ -533,20 +670,22 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
                 ok = false;
         }
 
+        if (!simulate) {
+            storeScratch(stacks);
+        }
         if (toggleLock) {
-            for (int i = 0; i < locksToToggle.size(); i++) {
-                baseList.get(locksToToggle.get(i)).enableMachineLock(lockItems.get(i));
+            for (int i = 0; i < stacks.size(); i++) {
+                if (scratchInserted[i]) {
+                    stacks.get(i).enableMachineLock(((ItemVariant) scratchResources[i]).getItem());
+                }
             }
         }
         return ok;
     }
 
     protected boolean putFluidOutputs(MachineRecipe recipe, boolean simulate, boolean toggleLock) {
-        List<ConfigurableFluidStack> baseList = inventory.getFluidOutputs();
-        List<ConfigurableFluidStack> stacks = simulate ? ConfigurableFluidStack.copyList(baseList) : baseList;
-
-        List<Integer> locksToToggle = new ArrayList<>();
-        List<Fluid> lockFluids = new ArrayList<>();
+        List<ConfigurableFluidStack> stacks = inventory.getFluidOutputs();
+        loadScratch(stacks);
 
         boolean ok = true;
         for (int i = 0; i < Math.min(recipe.fluidOutputs.size(), behavior.getMaxFluidOutputs()); ++i) {
@@ -560,18 +699,18 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
             }
             // First, try to find a slot that contains the fluid. If we couldn't find one,
             // we insert in any stack
+            FluidVariant outputKey = FluidVariant.of(output.fluid);
             outer: for (int tries = 0; tries < 2; ++tries) {
                 for (int j = 0; j < stacks.size(); j++) {
                     ConfigurableFluidStack stack = stacks.get(j);
-                    FluidVariant outputKey = FluidVariant.of(output.fluid);
+                    FluidVariant key = (FluidVariant) scratchResources[j];
                     if (stack.isResourceAllowedByLock(outputKey)
-                            && ((tries == 1 && stack.isResourceBlank()) || stack.getResource().equals(outputKey))) {
-                        long inserted = Math.min(output.amount, stack.getRemainingSpace());
+                            && ((tries == 1 && key.isBlank()) || key.equals(outputKey))) {
+                        long inserted = Math.min(output.amount, stack.getCapacity() - scratchAmounts[j]);
                         if (inserted > 0) {
-                            stack.setKey(outputKey);
-                            stack.increment(inserted);
-                            locksToToggle.add(j);
-                            lockFluids.add(output.fluid);
+                            scratchResources[j] = outputKey;
+                            scratchAmounts[j] += inserted;
+                            scratchInserted[j] = true;
                             if (!simulate) {
                                 behavior.getStatsOrDummy().addProducedFluids(output.fluid, inserted);
                             }
@@ -588,9 +727,14 @@ public class CrafterComponent implements IComponent.ServerOnly, CrafterAccess {
             }
         }
 
+        if (!simulate) {
+            storeScratch(stacks);
+        }
         if (toggleLock) {
-            for (int i = 0; i < locksToToggle.size(); i++) {
-                baseList.get(locksToToggle.get(i)).enableMachineLock(lockFluids.get(i));
+            for (int j = 0; j < stacks.size(); j++) {
+                if (scratchInserted[j]) {
+                    stacks.get(j).enableMachineLock(((FluidVariant) scratchResources[j]).getFluid());
+                }
             }
         }
         return ok;
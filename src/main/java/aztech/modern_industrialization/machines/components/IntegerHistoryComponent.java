@@ -25,8 +25,6 @@ package aztech.modern_industrialization.machines.components;
 
 import aztech.modern_industrialization.machines.IComponent;
 import java.util.Arrays;
-import java.util.EnumMap;
-import java.util.Map;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -35,7 +33,12 @@ import net.minecraft.nbt.CompoundTag;
  */
 public class IntegerHistoryComponent<K extends Enum<K>> implements IComponent {
 
-    protected final Map<K, int[]> histories;
+    /**
+     * Ring buffers of all keys, back to back: the history of a key starts at {@code ordinal * tickHistorySize}.
+     * The most recent value of every key is at offset {@link #head}, older values follow (wrapping around).
+     */
+    private final int[] histories;
+    private int head = 0;
     protected final int[] updatingValues; // indexed by enum ordinal
     protected final double[] averages; // indexed by enum ordinal
 
@@ -46,41 +49,41 @@ public class IntegerHistoryComponent<K extends Enum<K>> implements IComponent {
         this.keys = keyType.getEnumConstants();
         this.tickHistorySize = tickHistorySize;
 
-        this.histories = new EnumMap<>(keyType);
+        this.histories = new int[keys.length * tickHistorySize];
         this.updatingValues = new int[keys.length];
         this.averages = new double[keys.length];
-
-        for (K key : keys) {
-            histories.put(key, new int[tickHistorySize]);
-        }
     }
 
     @Override
     public void writeNbt(CompoundTag tag) {
+        // Saved from the most recent value to the oldest one.
         for (K key : keys) {
-            tag.putIntArray(key.toString(), histories.get(key));
+            int[] values = new int[tickHistorySize];
+            int start = key.ordinal() * tickHistorySize;
+            int firstPart = tickHistorySize - head;
+            System.arraycopy(histories, start + head, values, 0, firstPart);
+            System.arraycopy(histories, start, values, firstPart, head);
+            tag.putIntArray(key.toString(), values);
         }
     }
 
     @Override
     public void readNbt(CompoundTag tag) {
+        head = 0;
+
         for (K key : keys) {
             String keyString = key.toString();
-            if (tag.contains(keyString)) {
-                int[] array = tag.getIntArray(keyString);
-                if (array.length == tickHistorySize) {
-                    histories.put(key, array);
-                    continue;
-                }
+            int start = key.ordinal() * tickHistorySize;
+            int[] array = tag.contains(keyString) ? tag.getIntArray(keyString) : null;
+            if (array != null && array.length == tickHistorySize) {
+                System.arraycopy(array, 0, histories, start, tickHistorySize);
+            } else {
+                Arrays.fill(histories, start, start + tickHistorySize, 0);
             }
-            histories.put(key, new int[tickHistorySize]);
-        }
 
-        for (K key : keys) {
             double avg = 0;
-            int[] values = histories.get(key);
-            for (int value : values) {
-                avg += value;
+            for (int j = 0; j < tickHistorySize; ++j) {
+                avg += histories[start + j];
             }
             averages[key.ordinal()] = avg / tickHistorySize;
         }
@@ -93,24 +96,22 @@ public class IntegerHistoryComponent<K extends Enum<K>> implements IComponent {
     }
 
     public void clear() {
-        for (var array : histories.values()) {
-            Arrays.fill(array, 0);
-        }
+        Arrays.fill(histories, 0);
         Arrays.fill(updatingValues, 0);
         Arrays.fill(averages, 0);
     }
 
     public void tick() {
-        for (K key : keys) {
-            int i = key.ordinal();
-            int[] valuesArray = histories.get(key);
+        // The oldest value is replaced by the new one, which then becomes the most recent.
+        head = head == 0 ? tickHistorySize - 1 : head - 1;
+
+        for (int i = 0; i < keys.length; ++i) {
+            int index = i * tickHistorySize + head;
 
             // Update average
-            averages[i] += (double) (updatingValues[i] - valuesArray[tickHistorySize - 1]) / tickHistorySize;
+            averages[i] += (double) (updatingValues[i] - histories[index]) / tickHistorySize;
 
-            // Shift values by 1 and add updating value at the beginning.
-            System.arraycopy(valuesArray, 0, valuesArray, 1, tickHistorySize - 1);
-            valuesArray[0] = updatingValues[i];
+            histories[index] = updatingValues[i];
             updatingValues[i] = 0;
         }
     }
@@ -41,11 +41,11 @@ public class MachineInventoryComponent implements CrafterComponent.Inventory, IC
 
     public final MIInventory inventory;
 
-    private int invHash = 0;
+    private final List<Runnable> changeCallbacks = new ArrayList<>();
     private final ChangeListener listener = new ChangeListener() {
         @Override
         protected void onChange() {
-            invHash++;
+            changeCallbacks.forEach(Runnable::run);
         }
 
         @Override
@@ -94,8 +94,8 @@ public class MachineInventoryComponent implements CrafterComponent.Inventory, IC
     }
 
     @Override
-    public int hash() {
-        return invHash;
+    public void addChangeCallback(Runnable callback) {
+        changeCallbacks.add(callback);
     }
 
     @Override
@@ -107,5 +107,7 @@ public class MachineInventoryComponent implements CrafterComponent.Inventory, IC
     public void readNbt(CompoundTag tag) {
         this.inventory.readNbt(tag);
         this.inventory.addListener(listener, null);
+        // The stacks might have been replaced
+        changeCallbacks.forEach(Runnable::run);
     }
 }
@@ -42,11 +42,11 @@ public class MultiblockInventoryComponent implements CrafterComponent.Inventory,
     private final List<ConfigurableFluidStack> fluidInputs = new ArrayList<>();
     private final List<ConfigurableFluidStack> fluidOutputs = new ArrayList<>();
 
-    private int invHash = 0;
+    private final List<Runnable> changeCallbacks = new ArrayList<>();
     private final ChangeListener listener = new ChangeListener() {
         @Override
         protected void onChange() {
-            invHash++;
+            changeCallbacks.forEach(Runnable::run);
         }
 
         @Override
@@ -64,8 +64,8 @@ public class MultiblockInventoryComponent implements CrafterComponent.Inventory,
         rebuildList(sortedHatches, itemOutputs, HatchBlockEntity::appendItemOutputs);
         rebuildList(sortedHatches, fluidInputs, HatchBlockEntity::appendFluidInputs);
         rebuildList(sortedHatches, fluidOutputs, HatchBlockEntity::appendFluidOutputs);
-        // Update hash in case the slots have changed
-        invHash++;
+        // Notify in case the slots have changed
+        changeCallbacks.forEach(Runnable::run);
     }
 
     private <T, Stack extends AbstractConfigurableStack<T, ? extends TransferVariant<T>>> void rebuildList(
@@ -104,7 +104,7 @@ public class MultiblockInventoryComponent implements CrafterComponent.Inventory,
     }
 
     @Override
-    public int hash() {
-        return invHash;
+    public void addChangeCallback(Runnable callback) {
+        changeCallbacks.add(callback);
     }
 }
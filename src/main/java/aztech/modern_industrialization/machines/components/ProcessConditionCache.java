@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.machines.components;
+
+import aztech.modern_industrialization.machines.MachineBlockEntity;
+import aztech.modern_industrialization.machines.multiblocks.world.ChunkEventListener;
+import aztech.modern_industrialization.machines.multiblocks.world.ChunkEventListeners;
+import aztech.modern_industrialization.machines.recipe.MachineRecipe;
+import aztech.modern_industrialization.machines.recipe.MachineRecipeType;
+import aztech.modern_industrialization.machines.recipe.condition.MachineProcessCondition;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2BooleanOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the result of {@link MachineRecipe#conditionsMatch} for one machine, according to the
+ * {@linkplain MachineProcessCondition#getInvalidationScope() invalidation scope} of the conditions.
+ * Block updates at watched positions are received through {@link ChunkEventListeners}.
+ */
+final class ProcessConditionCache implements ChunkEventListener {
+    private final MachineProcessCondition.Context context;
+    private final Runnable onInvalidated;
+    private final Reference2BooleanOpenHashMap<MachineRecipe> results = new Reference2BooleanOpenHashMap<>();
+    private final LongSet watchedPositions = new LongOpenHashSet();
+    // What the cached results were computed for.
+    @Nullable
+    private Level level;
+    private int recipeGeneration;
+    @Nullable
+    private Direction facing;
+    /**
+     * Set from the listener callbacks, which may not modify the listeners. The actual clearing happens on the next access.
+     */
+    private boolean invalid = false;
+
+    ProcessConditionCache(MachineProcessCondition.Context context, Runnable onInvalidated) {
+        this.context = context;
+        this.onInvalidated = onInvalidated;
+    }
+
+    boolean conditionsMatch(MachineRecipe recipe) {
+        if (recipe.conditions.isEmpty()) {
+            return true;
+        }
+
+        MachineBlockEntity blockEntity = context.getBlockEntity();
+        if (isStale()) {
+            clear();
+            level = blockEntity.getLevel();
+            recipeGeneration = MachineRecipeType.getRecipeGeneration();
+            facing = blockEntity.orientation.facingDirection;
+        }
+
+        if (results.containsKey(recipe)) {
+            return results.getBoolean(recipe);
+        }
+
+        boolean result = recipe.conditionsMatch(context);
+        if (isCacheable(recipe)) {
+            for (var condition : recipe.conditions) {
+                if (condition.getInvalidationScope() == MachineProcessCondition.InvalidationScope.BLOCK_UPDATES) {
+                    condition.appendWatchedPositions(context, this::watch);
+                }
+            }
+            results.put(recipe, result);
+        }
+        return result;
+    }
+
+    /**
+     * Return true if the cached results don't apply anymore, for example because the machine was rotated.
+     * Nothing notifies the cache of such changes, so they must be checked by whoever relies on the cache to wake up.
+     */
+    boolean isStale() {
+        MachineBlockEntity blockEntity = context.getBlockEntity();
+        return invalid || level != blockEntity.getLevel() || recipeGeneration != MachineRecipeType.getRecipeGeneration()
+                || facing != blockEntity.orientation.facingDirection;
+    }
+
+    /**
+     * Return true if the result for this recipe can be cached, i.e. if something will notify us when it changes.
+     */
+    static boolean isCacheable(MachineRecipe recipe) {
+        for (var condition : recipe.conditions) {
+            if (condition.getInvalidationScope() == MachineProcessCondition.InvalidationScope.ALWAYS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void watch(BlockPos pos) {
+        if (watchedPositions.add(pos.asLong())) {
+            ChunkEventListeners.watchBlock(level, pos, this);
+        }
+    }
+
+    /**
+     * Forget all cached results and stop listening to block updates.
+     */
+    void clear() {
+        results.clear();
+        for (long pos : watchedPositions) {
+            ChunkEventListeners.unwatchBlock(level, BlockPos.of(pos), this);
+        }
+        level = null;
+        watchedPositions.clear();
+        invalid = false;
+    }
+
+    @Override
+    public void onBlockUpdate(BlockPos pos) {
+        if (!invalid) {
+            invalid = true;
+            onInvalidated.run();
+        }
+    }
+
+    @Override
+    public void onUnload() {
+    }
+
+    @Override
+    public void onLoad() {
+    }
+}
@@ -52,9 +52,23 @@ public class ShapeMatcher implements ChunkEventListener {
     private final Map<BlockPos, SimpleMember> simpleMembers;
     private final Map<BlockPos, HatchFlags> hatchFlags;
 
-    private boolean needsRematch = true;
     private boolean matchSuccessful = false;
     private final List<HatchBlockEntity> matchedHatches = new ArrayList<>();
+    private final Map<BlockPos, HatchBlockEntity> matchedHatchPositions = new HashMap<>();
+    /**
+     * If set, every position must be checked again. Otherwise, only the changed positions are checked.
+     */
+    private boolean needsFullRematch = true;
+    private final Set<BlockPos> changedPositions = new HashSet<>();
+    /**
+     * Positions that didn't match during the last rematch, only tracked while the match is unsuccessful.
+     */
+    private final Set<BlockPos> failedPositions = new HashSet<>();
+    /**
+     * Failed positions holding a hatch that is linked to another multiblock. Unlinking a hatch doesn't cause a block update,
+     * so these are checked again on every rematch.
+     */
+    private final Set<BlockPos> foreignHatchPositions = new HashSet<>();
 
     /**
      * Convert a relative position in the shape template to the real position in the
@@ -104,8 +118,12 @@ public class ShapeMatcher implements ChunkEventListener {
         }
 
         matchedHatches.clear();
+        matchedHatchPositions.clear();
+        failedPositions.clear();
+        foreignHatchPositions.clear();
+        changedPositions.clear();
         matchSuccessful = false;
-        needsRematch = true;
+        needsFullRematch = true;
     }
 
     /**
@@ -125,8 +143,8 @@ public class ShapeMatcher implements ChunkEventListener {
         if (be instanceof HatchBlockEntity hatch) {
             HatchFlags flags = hatchFlags.get(pos);
             if (flags != null && flags.allows(hatch.getHatchType()) && !hatch.isMatched()) {
-                if (matchedHatches != null) {
-                    matchedHatches.add(hatch);
+                if (hatches != null) {
+                    hatches.add(hatch);
                 }
                 return true;
             }
@@ -136,34 +154,120 @@ public class ShapeMatcher implements ChunkEventListener {
     }
 
     public boolean needsRematch() {
-        return needsRematch;
+        return needsFullRematch || !changedPositions.isEmpty() || !foreignHatchPositions.isEmpty();
     }
 
     public boolean isMatchSuccessful() {
-        return matchSuccessful && !needsRematch;
+        return matchSuccessful && !needsRematch();
     }
 
+    /**
+     * Check the shape again. If only some positions changed since the last rematch, only these are checked,
+     * and the hatches at other positions stay linked.
+     */
     public void rematch(Level world) {
-        unlinkHatches();
+        if (needsFullRematch) {
+            fullRematch(world);
+        } else if (matchSuccessful) {
+            for (BlockPos pos : changedPositions) {
+                rematchLinkedPosition(pos, world);
+            }
+
+            if (!failedPositions.isEmpty()) {
+                unlinkAll();
+            }
+        } else {
+            changedPositions.addAll(foreignHatchPositions);
+            for (BlockPos pos : changedPositions) {
+                if (matches(pos, world, null)) {
+                    failedPositions.remove(pos);
+                    foreignHatchPositions.remove(pos);
+                } else {
+                    markFailed(pos, world);
+                }
+            }
+
+            // Everything matches now, do a full rematch to collect and link the hatches.
+            if (failedPositions.isEmpty()) {
+                fullRematch(world);
+            }
+        }
+
+        changedPositions.clear();
+        needsFullRematch = false;
+    }
+
+    private void fullRematch(Level world) {
+        unlinkAll();
+        failedPositions.clear();
+        foreignHatchPositions.clear();
         matchSuccessful = true;
 
         for (BlockPos pos : simpleMembers.keySet()) {
             // TODO: check if the chunk is loaded
 
+            int hatchCount = matchedHatches.size();
             if (!matches(pos, world, matchedHatches)) {
                 matchSuccessful = false;
+                markFailed(pos, world);
+            } else if (matchedHatches.size() > hatchCount) {
+                matchedHatchPositions.put(pos, matchedHatches.get(hatchCount));
             }
         }
 
         if (!matchSuccessful) {
             matchedHatches.clear();
+            matchedHatchPositions.clear();
         } else {
             for (HatchBlockEntity hatch : matchedHatches) {
                 hatch.link(template.hatchCasing);
             }
         }
+    }
+
+    /**
+     * Check a changed position while all hatches are linked.
+     */
+    private void rematchLinkedPosition(BlockPos pos, Level world) {
+        HatchBlockEntity previousHatch = matchedHatchPositions.get(pos);
+        if (previousHatch != null) {
+            if (!simpleMembers.get(pos).matchesState(world.getBlockState(pos)) && world.getBlockEntity(pos) == previousHatch) {
+                // Same hatch, keep it linked.
+                return;
+            }
+            previousHatch.unlink();
+            matchedHatches.remove(previousHatch);
+            matchedHatchPositions.remove(pos);
+        }
+
+        int hatchCount = matchedHatches.size();
+        if (!matches(pos, world, matchedHatches)) {
+            markFailed(pos, world);
+        } else if (matchedHatches.size() > hatchCount) {
+            HatchBlockEntity hatch = matchedHatches.get(hatchCount);
+            hatch.link(template.hatchCasing);
+            matchedHatchPositions.put(pos, hatch);
+        }
+    }
+
+    private void markFailed(BlockPos pos, Level world) {
+        failedPositions.add(pos);
+
+        HatchFlags flags = hatchFlags.get(pos);
+        if (flags != null && world.getBlockEntity(pos) instanceof HatchBlockEntity hatch && flags.allows(hatch.getHatchType()) && hatch.isMatched()) {
+            foreignHatchPositions.add(pos);
+        } else {
+            foreignHatchPositions.remove(pos);
+        }
+    }
 
-        needsRematch = false;
+    private void unlinkAll() {
+        for (HatchBlockEntity hatch : matchedHatches) {
+            hatch.unlink();
+        }
+        matchedHatches.clear();
+        matchedHatchPositions.clear();
+        matchSuccessful = false;
     }
 
     public Set<ChunkPos> getSpannedChunks() {
@@ -176,30 +280,34 @@ public class ShapeMatcher implements ChunkEventListener {
 
     public void registerListeners(Level world) {
         for (ChunkPos chunkPos : getSpannedChunks()) {
-            ChunkEventListeners.listeners.add(world, chunkPos, this);
+            ChunkEventListeners.addChunkListener(world, chunkPos, this);
+        }
+        for (BlockPos pos : simpleMembers.keySet()) {
+            ChunkEventListeners.watchBlock(world, pos, this);
         }
     }
 
     public void unregisterListeners(Level world) {
         for (ChunkPos chunkPos : getSpannedChunks()) {
-            ChunkEventListeners.listeners.remove(world, chunkPos, this);
+            ChunkEventListeners.removeChunkListener(world, chunkPos, this);
+        }
+        for (BlockPos pos : simpleMembers.keySet()) {
+            ChunkEventListeners.unwatchBlock(world, pos, this);
         }
     }
 
     @Override
     public void onBlockUpdate(BlockPos pos) {
-        if (simpleMembers.containsKey(pos)) {
-            needsRematch = true;
-        }
+        changedPositions.add(pos.immutable());
     }
 
     @Override
     public void onUnload() {
-        needsRematch = true;
+        needsFullRematch = true;
     }
 
     @Override
     public void onLoad() {
-        needsRematch = true;
+        needsFullRematch = true;
     }
 }
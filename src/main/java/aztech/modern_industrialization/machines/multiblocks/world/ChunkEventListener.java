@@ -26,6 +26,9 @@ package aztech.modern_industrialization.machines.multiblocks.world;
 import net.minecraft.core.BlockPos;
 
 public interface ChunkEventListener {
+    /**
+     * Called when the block state changes at a position watched with {@link ChunkEventListeners#watchBlock}.
+     */
     void onBlockUpdate(BlockPos pos);
 
     void onUnload();
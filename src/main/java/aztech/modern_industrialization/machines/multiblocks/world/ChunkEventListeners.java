@@ -23,6 +23,13 @@
  */
 package aztech.modern_industrialization.machines.multiblocks.world;
 
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
@@ -30,9 +37,19 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
 
+/**
+ * Dispatches chunk loads, chunk unloads and block updates to {@link ChunkEventListener}s.
+ *
+ * <p>
+ * Listeners are indexed by packed chunk position. Load and unload events go to every listener of the chunk,
+ * but block updates only go to the listeners that watch the exact position.
+ * Each chunk keeps a bitset of its watched positions per section, so that the vast majority of block changes
+ * are rejected without a single map lookup beyond the chunk.
+ */
 public class ChunkEventListeners {
-    public static ChunkPosMultiMap<ChunkEventListener> listeners = new ChunkPosMultiMap<>();
+    private static Map<Level, Long2ObjectOpenHashMap<ChunkListeners>> listeners = new Reference2ObjectOpenHashMap<>();
     private static MinecraftServer server = null;
 
     public static void init() {
@@ -42,37 +59,88 @@ public class ChunkEventListeners {
 
         ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> {
             ensureServerThread();
-            Set<ChunkEventListener> cels = listeners.get(world, chunk.getPos());
-            if (cels != null) {
-                for (ChunkEventListener cel : cels) {
+            ChunkListeners cls = get(world, chunk.getPos().toLong());
+            if (cls != null) {
+                for (ChunkEventListener cel : cls.chunkListeners) {
                     cel.onLoad();
                 }
             }
         });
         ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
             ensureServerThread();
-            Set<ChunkEventListener> cels = listeners.get(world, chunk.getPos());
-            if (cels != null) {
-                for (ChunkEventListener cel : cels) {
+            ChunkListeners cls = get(world, chunk.getPos().toLong());
+            if (cls != null) {
+                for (ChunkEventListener cel : cls.chunkListeners) {
                     cel.onUnload();
                 }
             }
         });
     }
 
+    /**
+     * Receive load and unload events for the given chunk.
+     */
+    public static void addChunkListener(Level world, ChunkPos chunkPos, ChunkEventListener listener) {
+        getOrCreate(world, chunkPos.toLong()).chunkListeners.add(listener);
+    }
+
+    public static void removeChunkListener(Level world, ChunkPos chunkPos, ChunkEventListener listener) {
+        ChunkListeners cls = get(world, chunkPos.toLong());
+        if (cls == null || !cls.chunkListeners.remove(listener)) {
+            throw new RuntimeException("Could not remove listener at position " + chunkPos + " as it does not exist.");
+        }
+        removeIfEmpty(world, chunkPos.toLong(), cls);
+    }
+
+    /**
+     * Receive block updates for the given position.
+     */
+    public static void watchBlock(Level world, BlockPos pos, ChunkEventListener listener) {
+        getOrCreate(world, ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4)).watch(pos, listener);
+    }
+
+    public static void unwatchBlock(Level world, BlockPos pos, ChunkEventListener listener) {
+        long chunk = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+        ChunkListeners cls = get(world, chunk);
+        if (cls == null || !cls.unwatch(pos, listener)) {
+            throw new RuntimeException("Could not stop watching position " + pos + " as it is not watched.");
+        }
+        removeIfEmpty(world, chunk, cls);
+    }
+
     public static void onBlockStateChange(Level world, ChunkPos chunkPos, BlockPos pos) {
         // We skip block state changes that happen outside of the server thread.
         // Hopefully that won't cause problems.
         if (server.isSameThread()) {
-            Set<ChunkEventListener> cels = listeners.get(world, chunkPos);
-            if (cels != null) {
-                for (ChunkEventListener cel : cels) {
+            ChunkListeners cls = get(world, chunkPos.toLong());
+            if (cls != null && cls.isWatched(pos)) {
+                for (ChunkEventListener cel : cls.blockListeners.get(pos.asLong())) {
                     cel.onBlockUpdate(pos);
                 }
             }
         }
     }
 
+    @Nullable
+    private static ChunkListeners get(Level world, long chunk) {
+        Long2ObjectOpenHashMap<ChunkListeners> levelListeners = listeners.get(world);
+        return levelListeners == null ? null : levelListeners.get(chunk);
+    }
+
+    private static ChunkListeners getOrCreate(Level world, long chunk) {
+        return listeners.computeIfAbsent(world, w -> new Long2ObjectOpenHashMap<>()).computeIfAbsent(chunk, c -> new ChunkListeners());
+    }
+
+    private static void removeIfEmpty(Level world, long chunk, ChunkListeners cls) {
+        if (cls.chunkListeners.isEmpty() && cls.blockListeners.isEmpty()) {
+            Long2ObjectOpenHashMap<ChunkListeners> levelListeners = listeners.get(world);
+            levelListeners.remove(chunk);
+            if (levelListeners.isEmpty()) {
+                listeners.remove(world);
+            }
+        }
+    }
+
     private static void ensureServerThread() {
         if (!server.isSameThread()) {
             throw new RuntimeException("Thread is not server thread!");
@@ -81,7 +149,63 @@ public class ChunkEventListeners {
 
     private static void serverStopCleanup() {
         if (listeners.size() != 0) {
-            listeners = new ChunkPosMultiMap<>();
+            listeners = new Reference2ObjectOpenHashMap<>();
+        }
+    }
+
+    private static class ChunkListeners {
+        final Set<ChunkEventListener> chunkListeners = new ReferenceOpenHashSet<>();
+        final Long2ObjectOpenHashMap<List<ChunkEventListener>> blockListeners = new Long2ObjectOpenHashMap<>();
+        /**
+         * One bit per block of each section that contains watched positions, indexed by section y.
+         */
+        final Int2ObjectOpenHashMap<long[]> watchedBits = new Int2ObjectOpenHashMap<>();
+
+        boolean isWatched(BlockPos pos) {
+            long[] bits = watchedBits.get(pos.getY() >> 4);
+            if (bits == null) {
+                return false;
+            }
+            int index = sectionIndex(pos);
+            return (bits[index >> 6] & (1L << index)) != 0;
+        }
+
+        void watch(BlockPos pos, ChunkEventListener listener) {
+            blockListeners.computeIfAbsent(pos.asLong(), p -> new ArrayList<>(1)).add(listener);
+            int index = sectionIndex(pos);
+            watchedBits.computeIfAbsent(pos.getY() >> 4, y -> new long[64])[index >> 6] |= 1L << index;
+        }
+
+        boolean unwatch(BlockPos pos, ChunkEventListener listener) {
+            List<ChunkEventListener> posListeners = blockListeners.get(pos.asLong());
+            if (posListeners == null || !posListeners.remove(listener)) {
+                return false;
+            }
+            if (posListeners.isEmpty()) {
+                blockListeners.remove(pos.asLong());
+
+                int sectionY = pos.getY() >> 4;
+                long[] bits = watchedBits.get(sectionY);
+                int index = sectionIndex(pos);
+                bits[index >> 6] &= ~(1L << index);
+                if (isZero(bits)) {
+                    watchedBits.remove(sectionY);
+                }
+            }
+            return true;
+        }
+
+        private static int sectionIndex(BlockPos pos) {
+            return (pos.getY() & 15) << 8 | (pos.getZ() & 15) << 4 | (pos.getX() & 15);
+        }
+
+        private static boolean isZero(long[] bits) {
+            for (long word : bits) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 }
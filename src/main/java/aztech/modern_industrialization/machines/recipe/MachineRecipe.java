@@ -25,9 +25,12 @@ package aztech.modern_industrialization.machines.recipe;
 
 import aztech.modern_industrialization.machines.recipe.condition.MachineProcessCondition;
 import aztech.modern_industrialization.util.DefaultedListWrapper;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
 import net.minecraft.core.NonNullList;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.resources.ResourceLocation;
@@ -134,6 +137,7 @@ public class MachineRecipe implements Recipe<Container> {
         public final Ingredient ingredient;
         public final int amount;
         public final float probability;
+        private Set<Item> inputItemSet;
 
         public ItemInput(Ingredient ingredient, int amount, float probability) {
             this.ingredient = ingredient;
@@ -145,6 +149,20 @@ public class MachineRecipe implements Recipe<Container> {
             return ingredient.test(otherStack);
         }
 
+        /**
+         * Same as {@link #matches(ItemStack)}, but doesn't create a stack unless the ingredient needs to look at the NBT.
+         */
+        public boolean matches(ItemVariant variant) {
+            if (ingredient.requiresTesting()) {
+                return ingredient.test(variant.toStack());
+            }
+            Set<Item> items = inputItemSet;
+            if (items == null) {
+                items = inputItemSet = new ReferenceOpenHashSet<>(getInputItems());
+            }
+            return items.contains(variant.getItem());
+        }
+
         public List<Item> getInputItems() {
             return Arrays.stream(ingredient.getItems()).map(ItemStack::getItem).distinct().collect(Collectors.toList());
         }
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.machines.recipe;
+
+import aztech.modern_industrialization.inventory.ConfigurableFluidStack;
+import aztech.modern_industrialization.inventory.ConfigurableItemStack;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.*;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.material.Fluid;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the recipes of a {@link MachineRecipeType}, built once every time the recipes are reloaded.
+ *
+ * <p>
+ * Every item input and fluid input with a non-zero amount is a <i>constraint</i> of its recipe.
+ * Every item (with tags resolved) and every fluid points to the constraints it can satisfy,
+ * which allows finding the recipes for which all the constraints can be satisfied by an inventory
+ * without looking at the other recipes.
+ */
+final class MachineRecipeIndex {
+    private static final int[] NO_CONSTRAINTS = new int[0];
+
+    private final List<MachineRecipe> recipes;
+    private final Map<ResourceLocation, MachineRecipe> recipesById = new HashMap<>();
+    private final Map<Item, int[]> itemConstraints = new IdentityHashMap<>();
+    private final Map<Fluid, int[]> fluidConstraints = new IdentityHashMap<>();
+    private final Map<Item, List<MachineRecipe>> recipesByItem = new IdentityHashMap<>();
+    private final List<MachineRecipe> fluidOnlyRecipes = new ArrayList<>();
+    /**
+     * Recipes without any constraint, they are always candidates.
+     */
+    private final int[] unconstrainedRecipes;
+    /**
+     * Recipe of each constraint.
+     */
+    private final int[] constraintRecipe;
+    /**
+     * Number of constraints of each recipe.
+     */
+    private final int[] recipeConstraintCount;
+
+    // Scratch state for queries, the stamps avoid clearing the arrays between queries.
+    private final int[] constraintStamp;
+    private final int[] recipeStamp;
+    private final int[] recipeSatisfiedCount;
+    private final IntArrayList touchedRecipes = new IntArrayList();
+    private int currentStamp = 0;
+
+    MachineRecipeIndex(Collection<MachineRecipe> recipes) {
+        this.recipes = List.copyOf(recipes);
+
+        Map<Item, IntArrayList> itemConstraintLists = new IdentityHashMap<>();
+        Map<Fluid, IntArrayList> fluidConstraintLists = new IdentityHashMap<>();
+        IntArrayList constraintRecipeList = new IntArrayList();
+        IntArrayList unconstrainedList = new IntArrayList();
+        this.recipeConstraintCount = new int[this.recipes.size()];
+
+        for (int recipeId = 0; recipeId < this.recipes.size(); ++recipeId) {
+            MachineRecipe recipe = this.recipes.get(recipeId);
+            recipesById.putIfAbsent(recipe.getId(), recipe);
+
+            for (MachineRecipe.ItemInput input : recipe.itemInputs) {
+                List<Item> inputItems = input.getInputItems();
+                for (Item item : inputItems) {
+                    List<MachineRecipe> itemRecipes = recipesByItem.computeIfAbsent(item, i -> new ArrayList<>());
+                    if (itemRecipes.isEmpty() || itemRecipes.get(itemRecipes.size() - 1) != recipe) {
+                        itemRecipes.add(recipe);
+                    }
+                }
+                if (input.amount > 0) {
+                    int constraint = constraintRecipeList.size();
+                    constraintRecipeList.add(recipeId);
+                    recipeConstraintCount[recipeId]++;
+                    for (Item item : inputItems) {
+                        itemConstraintLists.computeIfAbsent(item, i -> new IntArrayList()).add(constraint);
+                    }
+                }
+            }
+            for (MachineRecipe.FluidInput input : recipe.fluidInputs) {
+                if (input.amount > 0) {
+                    int constraint = constraintRecipeList.size();
+                    constraintRecipeList.add(recipeId);
+                    recipeConstraintCount[recipeId]++;
+                    fluidConstraintLists.computeIfAbsent(input.fluid, f -> new IntArrayList()).add(constraint);
+                }
+            }
+
+            if (recipe.itemInputs.isEmpty() && !recipe.fluidInputs.isEmpty()) {
+                fluidOnlyRecipes.add(recipe);
+            }
+            if (recipeConstraintCount[recipeId] == 0) {
+                unconstrainedList.add(recipeId);
+            }
+        }
+
+        itemConstraintLists.forEach((item, list) -> itemConstraints.put(item, list.toIntArray()));
+        fluidConstraintLists.forEach((fluid, list) -> fluidConstraints.put(fluid, list.toIntArray()));
+        this.unconstrainedRecipes = unconstrainedList.toIntArray();
+        this.constraintRecipe = constraintRecipeList.toIntArray();
+        this.constraintStamp = new int[constraintRecipe.length];
+        this.recipeStamp = new int[this.recipes.size()];
+        this.recipeSatisfiedCount = new int[this.recipes.size()];
+    }
+
+    List<MachineRecipe> getRecipes() {
+        return recipes;
+    }
+
+    @Nullable
+    MachineRecipe getRecipe(ResourceLocation id) {
+        return recipesById.get(id);
+    }
+
+    List<MachineRecipe> getRecipesUsing(Item item) {
+        return recipesByItem.getOrDefault(item, List.of());
+    }
+
+    List<MachineRecipe> getFluidOnlyRecipes() {
+        return fluidOnlyRecipes;
+    }
+
+    /**
+     * Find the recipes for which every item and fluid input can be matched by at least one of the stacks.
+     * The amounts are not checked. The recipes are returned in the order of the recipe list.
+     */
+    List<MachineRecipe> getCandidateRecipes(List<ConfigurableItemStack> itemStacks, List<ConfigurableFluidStack> fluidStacks) {
+        if (++currentStamp == 0) {
+            // Overflow: clear the stamps to avoid false positives.
+            Arrays.fill(constraintStamp, 0);
+            Arrays.fill(recipeStamp, 0);
+            currentStamp = 1;
+        }
+        touchedRecipes.clear();
+
+        for (ConfigurableItemStack stack : itemStacks) {
+            if (!stack.isEmpty()) {
+                satisfy(itemConstraints.getOrDefault(stack.getResource().getItem(), NO_CONSTRAINTS));
+            }
+        }
+        for (ConfigurableFluidStack stack : fluidStacks) {
+            if (stack.getAmount() > 0) {
+                satisfy(fluidConstraints.getOrDefault(stack.getResource().getFluid(), NO_CONSTRAINTS));
+            }
+        }
+
+        // Only keep the recipes that had all of their constraints satisfied.
+        int candidateCount = 0;
+        for (int i = 0; i < touchedRecipes.size(); ++i) {
+            int recipe = touchedRecipes.getInt(i);
+            if (recipeSatisfiedCount[recipe] == recipeConstraintCount[recipe]) {
+                touchedRecipes.set(candidateCount++, recipe);
+            }
+        }
+        touchedRecipes.size(candidateCount);
+        touchedRecipes.addElements(candidateCount, unconstrainedRecipes);
+        IntArrays.quickSort(touchedRecipes.elements(), 0, touchedRecipes.size());
+
+        List<MachineRecipe> candidates = new ArrayList<>(touchedRecipes.size());
+        for (int i = 0; i < touchedRecipes.size(); ++i) {
+            candidates.add(recipes.get(touchedRecipes.getInt(i)));
+        }
+        return candidates;
+    }
+
+    private void satisfy(int[] constraints) {
+        for (int constraint : constraints) {
+            if (constraintStamp[constraint] != currentStamp) {
+                constraintStamp[constraint] = currentStamp;
+
+                int recipe = constraintRecipe[constraint];
+                if (recipeStamp[recipe] != currentStamp) {
+                    recipeStamp[recipe] = currentStamp;
+                    recipeSatisfiedCount[recipe] = 0;
+                    touchedRecipes.add(recipe);
+                }
+                recipeSatisfiedCount[recipe]++;
+            }
+        }
+    }
+}
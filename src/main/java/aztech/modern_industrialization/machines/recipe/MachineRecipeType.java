@@ -23,11 +23,14 @@
  */
 package aztech.modern_industrialization.machines.recipe;
 
+import aztech.modern_industrialization.inventory.ConfigurableFluidStack;
+import aztech.modern_industrialization.inventory.ConfigurableItemStack;
 import aztech.modern_industrialization.machines.init.MIMachineRecipeTypes;
 import aztech.modern_industrialization.machines.recipe.condition.MachineProcessCondition;
 import aztech.modern_industrialization.machines.recipe.condition.MachineProcessConditions;
 import com.google.gson.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -38,6 +41,7 @@ import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.GsonHelper;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.crafting.Ingredient;
+import net.minecraft.world.item.crafting.RecipeManager;
 import net.minecraft.world.item.crafting.RecipeSerializer;
 import net.minecraft.world.item.crafting.RecipeType;
 import net.minecraft.world.level.Level;
@@ -63,62 +67,71 @@ public class MachineRecipeType implements RecipeType<MachineRecipe>, RecipeSeria
 
     @Nullable
     public MachineRecipe getRecipe(Level world, ResourceLocation id) {
-        return getRecipes(world).stream().filter(r -> r.getId().equals(id)).findFirst().orElse(null);
+        if (world.isClientSide()) {
+            // The index is built for the server recipes, don't rebuild it for the client.
+            return getRecipes(world).stream().filter(r -> r.getId().equals(id)).findFirst().orElse(null);
+        }
+        return getRecipeIndex(world).getRecipe(id);
     }
 
     /*
-     * Smart recipe system to avoid iterating over all available recipes. Every
-     * recipe can be accessed by the type of its first input, so we build a cache
-     * Item -> MachineRecipe. We also need to store recipes that have fluid inputs
-     * but no item inputs. This cache is updated every 20 seconds in case the
-     * recipes are sometimes reloaded. TODO: only rebuild when the recipes have been
-     * reloaded
+     * Smart recipe system to avoid iterating over all available recipes. All item
+     * inputs (with tags resolved) and fluid inputs are indexed, so that we can only
+     * check the recipes that could match the contents of a machine. The index is
+     * rebuilt when the recipes are reloaded.
      */
-    private final Map<Item, List<MachineRecipe>> recipeCache = new HashMap<>();
-    private final List<MachineRecipe> fluidOnlyRecipes = new ArrayList<>();
-    private long lastUpdate = 0;
-    private static final long UPDATE_INTERVAL = 20 * 1000; // 20 seconds
+    private static final AtomicInteger recipeGeneration = new AtomicInteger();
+    @Nullable
+    private MachineRecipeIndex recipeIndex = null;
+    @Nullable
+    private RecipeManager indexRecipeManager = null;
+    private int indexGeneration = -1;
 
     /**
-     * Update recipe cache if necessary
+     * Called when the recipes of any recipe manager are replaced, to invalidate all the recipe caches.
      */
-    private void updateRecipeCache(ServerLevel world) {
-        long time = System.currentTimeMillis();
-        if (time - lastUpdate <= UPDATE_INTERVAL)
-            return;
-
-        // Update cache
-        lastUpdate = time;
-        recipeCache.clear();
-        fluidOnlyRecipes.clear();
-        for (MachineRecipe recipe : getRecipes(world)) {
-            if (recipe.itemInputs.size() == 0) {
-                if (recipe.fluidInputs.size() > 0) {
-                    fluidOnlyRecipes.add(recipe);
-                }
-            } else {
-                for (Item inputItem : recipe.itemInputs.get(0).getInputItems()) {
-                    recipeCache.putIfAbsent(inputItem, new ArrayList<>());
-                    recipeCache.get(inputItem).add(recipe);
-                }
-            }
+    public static void invalidateRecipeCaches() {
+        recipeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Return the current recipe generation, which changes every time the recipes are reloaded.
+     */
+    public static int getRecipeGeneration() {
+        return recipeGeneration.get();
+    }
+
+    private MachineRecipeIndex getRecipeIndex(Level world) {
+        int generation = recipeGeneration.get();
+        if (recipeIndex == null || indexRecipeManager != world.getRecipeManager() || indexGeneration != generation) {
+            recipeIndex = new MachineRecipeIndex(getRecipes(world));
+            indexRecipeManager = world.getRecipeManager();
+            indexGeneration = generation;
         }
+        return recipeIndex;
     }
 
     /**
      * Get all recipes that are using some Item.
      */
     public Collection<MachineRecipe> getMatchingRecipes(ServerLevel world, Item input) {
-        updateRecipeCache(world);
-        return Collections.unmodifiableCollection(recipeCache.getOrDefault(input, Collections.emptyList()));
+        return Collections.unmodifiableCollection(getRecipeIndex(world).getRecipesUsing(input));
     }
 
     /**
      * Get all recipes that are not using any input item.
      */
     public Collection<MachineRecipe> getFluidOnlyRecipes(ServerLevel world) {
-        updateRecipeCache(world);
-        return Collections.unmodifiableList(fluidOnlyRecipes);
+        return Collections.unmodifiableList(getRecipeIndex(world).getFluidOnlyRecipes());
+    }
+
+    /**
+     * Get the recipes for which every input can be matched by at least one of the given stacks,
+     * in the order of {@link #getRecipes}. The amounts are not checked.
+     */
+    public List<MachineRecipe> getCandidateRecipes(ServerLevel world, List<ConfigurableItemStack> itemInputs,
+            List<ConfigurableFluidStack> fluidInputs) {
+        return getRecipeIndex(world).getCandidateRecipes(itemInputs, fluidInputs);
     }
 
     private final ResourceLocation id;
@@ -27,7 +27,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.crafting.RecipeManager;
 import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A machine recipe type that allows adding proxies
@@ -37,17 +39,20 @@ public abstract class ProxyableMachineRecipeType extends MachineRecipeType {
         super(id);
     }
 
-    private long lastUpdate = 0;
-    private static final long UPDATE_INTERVAL = 20 * 1000;
+    @Nullable
+    private RecipeManager listRecipeManager = null;
+    private int listGeneration = -1;
     protected List<MachineRecipe> recipeList = new ArrayList<>();
 
     protected abstract void fillRecipeList(Level world);
 
     @Override
     public Collection<MachineRecipe> getRecipes(Level world) {
-        long time = System.currentTimeMillis();
-        if (time - lastUpdate > UPDATE_INTERVAL) {
-            lastUpdate = time;
+        // Only rebuild the list when the recipes are reloaded.
+        int generation = getRecipeGeneration();
+        if (listRecipeManager != world.getRecipeManager() || listGeneration != generation) {
+            listRecipeManager = world.getRecipeManager();
+            listGeneration = generation;
             recipeList.clear();
             fillRecipeList(world);
         }
@@ -27,6 +27,8 @@ import aztech.modern_industrialization.MIText;
 import aztech.modern_industrialization.machines.recipe.MachineRecipe;
 import com.google.gson.JsonObject;
 import java.util.List;
+import java.util.function.Consumer;
+import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
@@ -50,14 +52,27 @@ public class AdjacentBlockProcessCondition implements MachineProcessCondition {
 
     @Override
     public boolean canProcessRecipe(Context context, MachineRecipe recipe) {
-        var checkPos = switch (relativePosition) {
+        return context.getLevel().getBlockState(getCheckPos(context)).is(block);
+    }
+
+    @Override
+    public InvalidationScope getInvalidationScope() {
+        return InvalidationScope.BLOCK_UPDATES;
+    }
+
+    @Override
+    public void appendWatchedPositions(Context context, Consumer<BlockPos> consumer) {
+        consumer.accept(getCheckPos(context));
+    }
+
+    private BlockPos getCheckPos(Context context) {
+        return switch (relativePosition) {
         case BELOW -> context.getBlockEntity().getBlockPos().below();
         case BEHIND -> {
             var direction = context.getBlockEntity().orientation.facingDirection;
             yield context.getBlockEntity().getBlockPos().relative(direction.getOpposite());
         }
         };
-        return context.getLevel().getBlockState(checkPos).is(block);
     }
 
     @Override
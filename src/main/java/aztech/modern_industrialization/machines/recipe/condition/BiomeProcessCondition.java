@@ -48,6 +48,11 @@ public class BiomeProcessCondition implements MachineProcessCondition {
         return entityBiome.is(biome);
     }
 
+    @Override
+    public InvalidationScope getInvalidationScope() {
+        return InvalidationScope.NEVER;
+    }
+
     @Override
     public void appendDescription(List<Component> list) {
         var loc = biome.location();
@@ -27,6 +27,8 @@ import aztech.modern_industrialization.machines.MachineBlockEntity;
 import aztech.modern_industrialization.machines.recipe.MachineRecipe;
 import com.google.gson.JsonObject;
 import java.util.List;
+import java.util.function.Consumer;
+import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerLevel;
 import org.jetbrains.annotations.ApiStatus;
@@ -38,6 +40,20 @@ public interface MachineProcessCondition {
 
     Serializer<?> getSerializer();
 
+    /**
+     * What can change the result of {@link #canProcessRecipe}, so that machines can cache it.
+     * Defaults to {@link InvalidationScope#ALWAYS}, which disables caching.
+     */
+    default InvalidationScope getInvalidationScope() {
+        return InvalidationScope.ALWAYS;
+    }
+
+    /**
+     * For {@link InvalidationScope#BLOCK_UPDATES}: pass every position whose block state is read by {@link #canProcessRecipe}.
+     */
+    default void appendWatchedPositions(Context context, Consumer<BlockPos> consumer) {
+    }
+
     @ApiStatus.NonExtendable
     default JsonObject toJson() {
         var obj = ((Serializer) getSerializer()).toJson(this, false);
@@ -45,6 +61,22 @@ public interface MachineProcessCondition {
         return obj;
     }
 
+    enum InvalidationScope {
+        /**
+         * The result only depends on the position and the level of the machine.
+         */
+        NEVER,
+        /**
+         * The result only depends on the block states at the {@linkplain #appendWatchedPositions watched positions},
+         * which may themselves depend on the orientation of the machine.
+         */
+        BLOCK_UPDATES,
+        /**
+         * The result may change at any time and is never cached.
+         */
+        ALWAYS,
+    }
+
     interface Context {
         MachineBlockEntity getBlockEntity();
 
@@ -23,12 +23,18 @@
  */
 package aztech.modern_industrialization.misc.runtime_datagen;
 
+import aztech.modern_industrialization.MIFluids;
 import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.datagen.dynreg.DynamicRegistryDatagen;
-import java.io.File;
+import aztech.modern_industrialization.materials.MaterialRegistry;
+import aztech.modern_industrialization.materials.property.MaterialProperty;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
@@ -45,6 +51,8 @@ import net.minecraft.data.worldgen.BootstapContext;
 import net.minecraft.resources.ResourceKey;
 
 public class RuntimeDataGen {
+    private static final String FINGERPRINT_FILE = "runtime_datagen_fingerprint.txt";
+
     public static void run(Consumer<FabricDataGenerator.Pack> config) {
         try {
             runInner(config);
@@ -68,6 +76,17 @@ public class RuntimeDataGen {
                 .resolve("datagen_texture_overrides"));
 
         var dataOutput = miFolder.resolve("runtime_datagen");
+        var cleanedOutput = miFolder.resolve("generated_resources");
+        var fingerprintFile = miFolder.resolve(FINGERPRINT_FILE);
+
+        String fingerprint = computeFingerprint(miFolder);
+        if (Files.isDirectory(cleanedOutput) && Files.exists(fingerprintFile)
+                && Files.readString(fingerprintFile).equals(fingerprint)) {
+            ModernIndustrialization.LOGGER.info("MI runtime data generation inputs are unchanged, skipping it");
+            return;
+        }
+        // Only write the new fingerprint once the output is complete
+        Files.deleteIfExists(fingerprintFile);
 
         ModernIndustrialization.LOGGER.info("Starting MI runtime data generation");
 
@@ -99,14 +118,8 @@ public class RuntimeDataGen {
 
         ModernIndustrialization.LOGGER.info("Starting MI runtime pack calculation");
 
-        var cleanedOutput = miFolder.resolve("generated_resources");
-        // Delete output folder first before copying, otherwise Windows will complain
-        // Code from https://stackoverflow.com/questions/35988192/java-nio-most-concise-recursive-directory-delete
-        if (Files.exists(cleanedOutput)) {
-            try (Stream<Path> walk = Files.walk(cleanedOutput)) {
-                walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
-            }
-        }
+        // Files of the cleaned output that are still generated, relative to the output folder
+        Set<Path> generatedFiles = new HashSet<>();
 
         // Check caches to see which files need to be copied over
         try (var cacheStream = Files.walk(dataOutput.resolve(".cache"), 1)) {
@@ -126,11 +139,16 @@ public class RuntimeDataGen {
                         continue;
                     }
 
-                    // File is changed, copy it
+                    // File is changed, copy it unless the previous run already did
                     var newPath = cleanedOutput.resolve(newEntry.getKey());
+                    var sourcePath = dataOutput.resolve(newEntry.getKey());
+                    generatedFiles.add(newPath);
                     try {
+                        if (Files.exists(newPath) && Files.mismatch(sourcePath, newPath) == -1) {
+                            continue;
+                        }
                         Files.createDirectories(newPath.getParent());
-                        Files.copy(dataOutput.resolve(newEntry.getKey()), newPath);
+                        Files.copy(sourcePath, newPath, StandardCopyOption.REPLACE_EXISTING);
                     } catch (IOException e) {
                         ModernIndustrialization.LOGGER.error("Failed to copy file " + newEntry.getKey(), e);
                     }
@@ -138,9 +156,103 @@ public class RuntimeDataGen {
             });
         }
 
+        // Remove files that are not generated anymore
+        if (Files.exists(cleanedOutput)) {
+            try (Stream<Path> walk = Files.walk(cleanedOutput)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        if (Files.isDirectory(path)) {
+                            if (!path.equals(cleanedOutput) && isEmptyDirectory(path)) {
+                                Files.delete(path);
+                            }
+                        } else if (!generatedFiles.contains(path)) {
+                            Files.delete(path);
+                        }
+                    } catch (IOException e) {
+                        ModernIndustrialization.LOGGER.error("Failed to delete file " + path, e);
+                    }
+                });
+            }
+        }
+
+        Files.writeString(fingerprintFile, fingerprint);
+
         ModernIndustrialization.LOGGER.info("Successfully finished MI runtime data generation");
     }
 
+    private static boolean isEmptyDirectory(Path path) throws IOException {
+        try (Stream<Path> entries = Files.list(path)) {
+            return entries.findAny().isEmpty();
+        }
+    }
+
+    /**
+     * Compute a hash of everything that runtime datagen depends on:
+     * the MI version, the KubeJS scripts, the extra datagen resources, and the registered materials, fluids, blocks and items.
+     */
+    private static String computeFingerprint(Path miFolder) throws IOException {
+        var hasher = Hashing.sha256().newHasher();
+
+        var modContainer = FabricLoader.getInstance().getModContainer(ModernIndustrialization.MOD_ID).get();
+        hasher.putString(modContainer.getMetadata().getVersion().getFriendlyString(), StandardCharsets.UTF_8);
+        // Client runtime datagen also runs the client providers
+        hasher.putString(FabricLoader.getInstance().getEnvironmentType().name(), StandardCharsets.UTF_8);
+
+        var kubejsFolder = FabricLoader.getInstance().getGameDir().resolve("kubejs");
+        hashFolder(hasher, kubejsFolder.resolve("startup_scripts"));
+        hashFolder(hasher, kubejsFolder.resolve("server_scripts"));
+        hashFolder(hasher, miFolder.resolve("extra_datagen_resources"));
+
+        for (var material : new TreeMap<>(MaterialRegistry.getMaterials()).values()) {
+            hasher.putString(material.name, StandardCharsets.UTF_8);
+            hasher.putInt(material.get(MaterialProperty.MEAN_RGB));
+            hasher.putString(material.get(MaterialProperty.SET).name, StandardCharsets.UTF_8);
+            for (var part : material.getParts().values()) {
+                hasher.putString(part.getItemId(), StandardCharsets.UTF_8);
+                hasher.putString(part.getTextureGenParams().toString(), StandardCharsets.UTF_8);
+            }
+        }
+
+        for (var fluid : MIFluids.FLUIDS.values()) {
+            hasher.putString(fluid.getId().toString(), StandardCharsets.UTF_8);
+            hasher.putInt(fluid.color);
+            hasher.putInt(fluid.opacity);
+            hasher.putBoolean(fluid.isGas);
+            hasher.putString(fluid.fluidTexture.name(), StandardCharsets.UTF_8);
+        }
+
+        hashIds(hasher, BuiltInRegistries.BLOCK);
+        hashIds(hasher, BuiltInRegistries.ITEM);
+
+        return hasher.hash().toString();
+    }
+
+    private static void hashIds(Hasher hasher, Registry<?> registry) {
+        // The key set is backed by a hash map, so sort the ids to get a stable order
+        List<String> paths = new ArrayList<>();
+        for (var id : registry.keySet()) {
+            if (id.getNamespace().equals(ModernIndustrialization.MOD_ID)) {
+                paths.add(id.getPath());
+            }
+        }
+        paths.sort(null);
+        for (var path : paths) {
+            hasher.putString(path, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void hashFolder(Hasher hasher, Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (var file : (Iterable<Path>) walk.filter(Files::isRegularFile).sorted()::iterator) {
+                hasher.putString(folder.relativize(file).toString(), StandardCharsets.UTF_8);
+                hasher.putBytes(Files.readAllBytes(file));
+            }
+        }
+    }
+
     /**
      * Read cache, and return map from resource path to hash.
      */
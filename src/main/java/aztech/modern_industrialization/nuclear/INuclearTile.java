@@ -25,13 +25,30 @@ package aztech.modern_industrialization.nuclear;
 
 import aztech.modern_industrialization.machines.components.NuclearEfficiencyHistoryComponent;
 import java.util.Optional;
+import net.minecraft.util.RandomSource;
 
 public interface INuclearTile extends INuclearTileData {
 
+    /**
+     * {@link #setTemperature} must clamp the temperature between 0 and this value.
+     */
+    double getMaxTemperature();
+
     void setTemperature(double temp);
 
     void putHeat(double eu);
 
+    /**
+     * Record EU deposited by the neutron walk in the EU generation history, without touching the temperature,
+     * which is handled by {@link NuclearHeatSolver}.
+     */
+    void recordEuGeneration(double eu);
+
+    /**
+     * Tiles that were removed since the simulation started are skipped when its results are written back.
+     */
+    boolean isRemoved();
+
     default Optional<NuclearFuel> getFuel() {
         if (getComponent() instanceof NuclearFuel fuel) {
             return Optional.of(fuel);
@@ -43,8 +60,14 @@ public interface INuclearTile extends INuclearTileData {
 
     void addNeutronsToFlux(int neutronNumber, NeutronType type);
 
-    int neutronGenerationTick(NuclearEfficiencyHistoryComponent efficiencyHistory);
+    /**
+     * @param random The random source of the grid. Implementations must not use any other source of randomness, so that ticks can be replayed.
+     */
+    int neutronGenerationTick(NuclearEfficiencyHistoryComponent efficiencyHistory, RandomSource random);
 
-    void nuclearTick(NuclearEfficiencyHistoryComponent efficiencyHistory);
+    /**
+     * @param random The random source of the grid. Implementations must not use any other source of randomness, so that ticks can be replayed.
+     */
+    void nuclearTick(NuclearEfficiencyHistoryComponent efficiencyHistory, RandomSource random);
 
 }
@@ -24,12 +24,22 @@
 package aztech.modern_industrialization.nuclear;
 
 import aztech.modern_industrialization.machines.blockentities.hatches.NuclearHatch;
+import net.minecraft.world.level.levelgen.XoroshiroRandomSource;
 import org.jetbrains.annotations.Nullable;
 
 public final class NuclearGrid {
     private final int sizeX;
     private final int sizeY;
     private final @Nullable NuclearHatch[][] hatchesGrid;
+    @Nullable
+    private NuclearHeatSolver heatSolver;
+    @Nullable
+    private NuclearNeutronTransport neutronTransport;
+    /**
+     * Reseeded at the start of every simulated tick.
+     */
+    private final XoroshiroRandomSource random = new XoroshiroRandomSource(0);
+    private long lastSeed;
 
     public NuclearGrid(int sizeX, int sizeY, @Nullable NuclearHatch[][] hatchesGrid) {
         this.sizeX = sizeX;
@@ -51,6 +61,38 @@ public final class NuclearGrid {
         return hatchesGrid[x][y];
     }
 
+    NuclearHeatSolver getHeatSolver() {
+        if (heatSolver == null) {
+            heatSolver = new NuclearHeatSolver(this);
+        }
+        return heatSolver;
+    }
+
+    NuclearNeutronTransport getNeutronTransport() {
+        if (neutronTransport == null) {
+            neutronTransport = new NuclearNeutronTransport(this);
+        }
+        return neutronTransport;
+    }
+
+    XoroshiroRandomSource reseed(long seed) {
+        lastSeed = seed;
+        random.setSeed(seed);
+        return random;
+    }
+
+    XoroshiroRandomSource getRandom() {
+        return random;
+    }
+
+    /**
+     * The seed of the last simulated tick. Simulating again from the same state with this seed gives the same result.
+     */
+    public long getLastSeed() {
+        return lastSeed;
+    }
+
+    // The neutron registration callbacks may be called from a simulation thread, see NuclearGridHelper#compute.
     public void registerNeutronFate(int neutronNumber, NeutronType type, NeutronFate escape) {
     }
 
@@ -23,214 +23,73 @@
  */
 package aztech.modern_industrialization.nuclear;
 
-import static aztech.modern_industrialization.nuclear.NeutronFate.*;
-
 import aztech.modern_industrialization.machines.components.NuclearEfficiencyHistoryComponent;
-import java.util.Optional;
-import java.util.Random;
+import net.minecraft.util.RandomSource;
 import org.jetbrains.annotations.Nullable;
 
 public class NuclearGridHelper {
 
-    private static final int[] dX = { 1, 0, -1, 0 };
-    private static final int[] dY = { 0, 1, 0, -1 };
-
-    private static final Random rand = new Random();
-
-    private static final int MAX_SPLIT = 30;
-
-    public static boolean simulate(NuclearGrid grid, NuclearEfficiencyHistoryComponent efficiencyHistory) {
-
-        int sizeX = grid.getSizeX();
-        int sizeY = grid.getSizeY();
-
-        boolean hasFuel = false;
-
-        for (int i = 0; i < sizeX; i++) {
-            for (int j = 0; j < sizeY; j++) {
-
-                final int x = i;
-                final int y = j;
-
-                @Nullable
-                INuclearTile tile = grid.getNuclearTile(i, j);
-                if (tile == null) {
-                    continue;
-                }
-
-                // Get fuel before the generation tick, because the fuel might be consumed!
-                Optional<NuclearFuel> maybeFuel = tile.getFuel();
-                int neutronNumberPrime = tile.neutronGenerationTick(efficiencyHistory);
-                if (neutronNumberPrime == 0) {
-                    continue;
-                }
-
-                hasFuel = true;
-                NuclearFuel fuel = maybeFuel.orElseThrow(() -> new IllegalStateException("Neutron generated without fuel"));
-
-                tile.putHeat(neutronNumberPrime * fuel.directEUbyDesintegration / fuel.neutronMultiplicationFactor);
-
-                int split = Math.min(neutronNumberPrime, MAX_SPLIT);
-                int neutronNumberPerSplit = neutronNumberPrime / split;
-
-                for (int k = 0; k < split + 1; k++) {
-
-                    int neutronNumber = (k < split) ? neutronNumberPerSplit : neutronNumberPrime % split;
-
-                    if (neutronNumber > 0) {
-                        NeutronType type = NeutronType.FAST;
-                        grid.registerNeutronCreation(neutronNumber, type);
-
-                        int dir = rand.nextInt(4);
-                        int posX = x;
-                        int posY = y;
-
-                        // Loop until we exit the grid
-                        while (true) {
-                            @Nullable
-                            INuclearTile secondTile = grid.getNuclearTile(posX, posY);
-
-                            if (secondTile == null) {
-                                grid.registerNeutronFate(neutronNumber, type, ESCAPE);
-                                break;
-                            }
-
-                            secondTile.addNeutronsToFlux(neutronNumber, type);
-
-                            @Nullable
-                            INuclearComponent<?> component = secondTile.getComponent();
-                            if (component != null) {
-                                double interactionProba = component.getNeutronBehaviour().interactionTotalProbability(type);
-
-                                if (rand.nextDouble() < interactionProba) {
-
-                                    double interactionSelector = rand.nextDouble();
-
-                                    double probaAbsorption = component.getNeutronBehaviour().interactionRelativeProbability(type,
-                                            NeutronInteraction.ABSORPTION);
-
-                                    if (interactionSelector <= probaAbsorption) {
-                                        secondTile.absorbNeutrons(neutronNumber, type);
-
-                                        if (type == NeutronType.FAST) {
-                                            secondTile.putHeat(neutronNumber * NuclearConstant.EU_FOR_FAST_NEUTRON);
-                                        }
-
-                                        if (secondTile.getFuel().isPresent()) {
-                                            grid.registerNeutronFate(neutronNumber, type, ABSORBED_IN_FUEL);
-                                        } else {
-                                            grid.registerNeutronFate(neutronNumber, type, ABSORBED_NOT_IN_FUEL);
-                                        }
+    private static final int NUMERICAL_SUBSTEP = 10;
+
+    /**
+     * Simulate one tick of the grid. The result only depends on the state of the grid and on the seed,
+     * which makes it possible to replay a tick by restoring the state and passing the same seed again.
+     *
+     * @return true if any neutron was generated
+     */
+    public static boolean simulate(NuclearGrid grid, NuclearEfficiencyHistoryComponent efficiencyHistory, long seed) {
+        boolean hasFuel = prepare(grid, efficiencyHistory, seed);
+        compute(grid);
+        finish(grid, efficiencyHistory);
+        return hasFuel;
+    }
 
-                                        break;
-                                    } else {
-                                        dir = rand.nextInt(4);
+    /**
+     * First phase of {@link #simulate}, on the server thread: neutron generation, and snapshot of the grid.
+     *
+     * @return true if any neutron was generated
+     */
+    public static boolean prepare(NuclearGrid grid, NuclearEfficiencyHistoryComponent efficiencyHistory, long seed) {
+        RandomSource random = grid.reseed(seed);
 
-                                        if (type == NeutronType.FAST
-                                                && rand.nextDouble() < component.getNeutronBehaviour().neutronSlowingProbability()) {
-                                            type = NeutronType.THERMAL;
-                                            secondTile.putHeat(neutronNumber * NuclearConstant.EU_FOR_FAST_NEUTRON);
-                                        }
-                                    }
-                                }
-                            }
+        boolean hasFuel = grid.getNeutronTransport().generate(efficiencyHistory, random);
+        grid.getHeatSolver().load(NUMERICAL_SUBSTEP);
+        return hasFuel;
+    }
 
-                            posX += dX[dir];
-                            posY += dY[dir];
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * Second phase of {@link #simulate}: neutron walk and heat diffusion.
+     * Only works on the snapshot taken by {@link #prepare}, so it may run on any thread.
+     */
+    public static void compute(NuclearGrid grid) {
+        NuclearNeutronTransport neutronTransport = grid.getNeutronTransport();
+        neutronTransport.walk(grid.getRandom());
 
         // HEAT
-
-        // Cache heat transfer coefficients
-        double heatTransferCoeff[][] = new double[grid.getSizeX()][grid.getSizeY()];
-        for (int i = 0; i < sizeX; ++i) {
-            for (int j = 0; j < sizeY; ++j) {
-                @Nullable
-                INuclearTile tile = grid.getNuclearTile(i, j);
-                if (tile != null) {
-                    heatTransferCoeff[i][j] = tile.getHeatTransferCoeff();
-                }
-            }
-        }
-
-        final int NUMERICAL_SUBSTEP = 10;
-
+        NuclearHeatSolver heatSolver = grid.getHeatSolver();
+        heatSolver.addHeat(neutronTransport.getHeat());
         for (int substep = 0; substep < NUMERICAL_SUBSTEP; substep++) {
-            double[][] temperatureOut = new double[sizeX][sizeY];
-            double[][] temperatureDelta = new double[sizeX][sizeY];
-
-            for (int step = 0; step < 3; step++) {
-                // step 0: compute temperatureOut = dT * coeff
-                // step 1: compute temperatureDelta, clamping as necessary
-                // step 2: set temperature
-                for (int i = 0; i < sizeX; i++) {
-                    for (int j = 0; j < sizeY; j++) {
-                        @Nullable
-                        INuclearTile tile = grid.getNuclearTile(i, j);
-                        if (tile == null) {
-                            continue;
-                        }
-
-                        double temperatureA = tile.getTemperature();
-                        if (step == 2) {
-                            tile.setTemperature(temperatureA + temperatureDelta[i][j]);
-                        } else {
-                            double coeffA = heatTransferCoeff[i][j];
-
-                            if (step == 1) {
-                                // clamp to avoid reaching < 0 temperatures
-                                temperatureDelta[i][j] -= Math.min(temperatureA, temperatureOut[i][j]);
-                            }
-                            for (int k = 0; k < 4; k++) {
-                                int i2 = i + dX[k];
-                                int j2 = j + dY[k];
-
-                                @Nullable
-                                INuclearTile secondTile = grid.getNuclearTile(i2, j2);
-
-                                if (secondTile != null) {
-                                    double temperatureB = secondTile.getTemperature();
-                                    double coeffB = heatTransferCoeff[i2][j2];
-                                    double coeffTransfer = 0.5 * (coeffA + coeffB) / NUMERICAL_SUBSTEP;
-                                    if (temperatureA > temperatureB) {
-                                        if (step == 0) {
-                                            temperatureOut[i][j] += (temperatureA - temperatureB) * coeffTransfer;
-                                        } else {
-                                            double frac = Math.min(1, temperatureA / temperatureOut[i][j]);
-                                            temperatureDelta[i2][j2] += frac * (temperatureA - temperatureB) * coeffTransfer;
-                                        }
-                                    }
-                                } else {
-                                    double temperatureB = 0;
-                                    double coeffTransfer = 0.5 * coeffA / NUMERICAL_SUBSTEP;
-                                    if (step == 0) {
-                                        temperatureOut[i][j] += (temperatureA - temperatureB) * coeffTransfer;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            heatSolver.substep();
         }
+    }
 
-        for (int i = 0; i < sizeX; i++) {
-            for (int j = 0; j < sizeY; j++) {
+    /**
+     * Last phase of {@link #simulate}, on the server thread: write the results back to the tiles and tick them.
+     */
+    public static void finish(NuclearGrid grid, NuclearEfficiencyHistoryComponent efficiencyHistory) {
+        grid.getNeutronTransport().apply();
+        grid.getHeatSolver().store();
+
+        RandomSource random = grid.getRandom();
+        for (int i = 0; i < grid.getSizeX(); i++) {
+            for (int j = 0; j < grid.getSizeY(); j++) {
                 @Nullable
                 INuclearTile maybeTile = grid.getNuclearTile(i, j);
 
-                if (maybeTile != null) {
-                    maybeTile.nuclearTick(efficiencyHistory);
+                if (maybeTile != null && !maybeTile.isRemoved()) {
+                    maybeTile.nuclearTick(efficiencyHistory, random);
                 }
             }
         }
-
-        return hasFuel;
-
     }
-
 }
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.nuclear;
+
+import java.util.Arrays;
+
+/**
+ * Heat diffusion solver for a {@link NuclearGrid}.
+ *
+ * <p>
+ * The tiles are packed into flat arrays (in the same x-major order as the grid) so that the substeps
+ * don't need to go through {@link INuclearTile}. The arrays are reused from one tick to the next.
+ * The floating point operations are performed in exactly the same order as the original per-tile algorithm,
+ * so the results are bit-identical.
+ */
+final class NuclearHeatSolver {
+    private static final int[] dX = { 1, 0, -1, 0 };
+    private static final int[] dY = { 0, 1, 0, -1 };
+
+    private final INuclearTile[] tiles;
+    private final int tileCount;
+    /**
+     * For each tile and each of the 4 directions: the index of the neighbor tile, or -1 if there is none.
+     */
+    private final int[] neighbors;
+
+    private final double[] temperature;
+    private final double[] maxTemperature;
+    private final double[] heatTransferCoeff;
+    /**
+     * For each tile and each of the 4 directions: the transfer coefficient for one substep.
+     */
+    private final double[] transferCoeff;
+    private final double[] temperatureOut;
+    private final double[] temperatureDelta;
+
+    NuclearHeatSolver(NuclearGrid grid) {
+        int sizeX = grid.getSizeX();
+        int sizeY = grid.getSizeY();
+
+        int[] tileIndex = new int[sizeX * sizeY];
+        int count = 0;
+        for (int i = 0; i < sizeX; i++) {
+            for (int j = 0; j < sizeY; j++) {
+                tileIndex[i * sizeY + j] = grid.getNuclearTile(i, j) != null ? count++ : -1;
+            }
+        }
+
+        this.tileCount = count;
+        this.tiles = new INuclearTile[count];
+        this.neighbors = new int[4 * count];
+        for (int i = 0; i < sizeX; i++) {
+            for (int j = 0; j < sizeY; j++) {
+                int a = tileIndex[i * sizeY + j];
+                if (a < 0) {
+                    continue;
+                }
+                tiles[a] = grid.getNuclearTile(i, j);
+                for (int k = 0; k < 4; k++) {
+                    int i2 = i + dX[k];
+                    int j2 = j + dY[k];
+                    boolean inGrid = i2 >= 0 && i2 < sizeX && j2 >= 0 && j2 < sizeY;
+                    neighbors[4 * a + k] = inGrid ? tileIndex[i2 * sizeY + j2] : -1;
+                }
+            }
+        }
+
+        this.temperature = new double[count];
+        this.maxTemperature = new double[count];
+        this.heatTransferCoeff = new double[count];
+        this.transferCoeff = new double[4 * count];
+        this.temperatureOut = new double[count];
+        this.temperatureDelta = new double[count];
+    }
+
+    /**
+     * Read the temperatures and the heat transfer coefficients of the tiles.
+     */
+    void load(int numericalSubsteps) {
+        for (int a = 0; a < tileCount; a++) {
+            INuclearTile tile = tiles[a];
+            temperature[a] = tile.getTemperature();
+            maxTemperature[a] = tile.getMaxTemperature();
+            heatTransferCoeff[a] = tile.getHeatTransferCoeff();
+        }
+
+        for (int a = 0; a < tileCount; a++) {
+            double coeffA = heatTransferCoeff[a];
+            for (int k = 0; k < 4; k++) {
+                int b = neighbors[4 * a + k];
+                if (b >= 0) {
+                    transferCoeff[4 * a + k] = 0.5 * (coeffA + heatTransferCoeff[b]) / numericalSubsteps;
+                } else {
+                    transferCoeff[4 * a + k] = 0.5 * coeffA / numericalSubsteps;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add heat to the loaded temperatures, with the same clamping as the tiles.
+     */
+    void addHeat(double[] eu) {
+        for (int a = 0; a < tileCount; a++) {
+            if (eu[a] != 0) {
+                temperature[a] = Math.min(Math.max(temperature[a] + eu[a] / NuclearConstant.EU_PER_DEGREE, 0), maxTemperature[a]);
+            }
+        }
+    }
+
+    void substep() {
+        Arrays.fill(temperatureOut, 0, tileCount, 0);
+        Arrays.fill(temperatureDelta, 0, tileCount, 0);
+
+        // compute temperatureOut = dT * coeff
+        for (int a = 0; a < tileCount; a++) {
+            double temperatureA = temperature[a];
+            for (int k = 0; k < 4; k++) {
+                int b = neighbors[4 * a + k];
+                if (b >= 0) {
+                    double temperatureB = temperature[b];
+                    if (temperatureA > temperatureB) {
+                        temperatureOut[a] += (temperatureA - temperatureB) * transferCoeff[4 * a + k];
+                    }
+                } else {
+                    temperatureOut[a] += (temperatureA - 0) * transferCoeff[4 * a + k];
+                }
+            }
+        }
+
+        // compute temperatureDelta, clamping as necessary
+        for (int a = 0; a < tileCount; a++) {
+            double temperatureA = temperature[a];
+            // clamp to avoid reaching < 0 temperatures
+            temperatureDelta[a] -= Math.min(temperatureA, temperatureOut[a]);
+            for (int k = 0; k < 4; k++) {
+                int b = neighbors[4 * a + k];
+                if (b >= 0) {
+                    double temperatureB = temperature[b];
+                    if (temperatureA > temperatureB) {
+                        double frac = Math.min(1, temperatureA / temperatureOut[a]);
+                        temperatureDelta[b] += frac * (temperatureA - temperatureB) * transferCoeff[4 * a + k];
+                    }
+                }
+            }
+        }
+
+        // set temperature, with the same clamping as the tiles
+        for (int a = 0; a < tileCount; a++) {
+            temperature[a] = Math.min(Math.max(temperature[a] + temperatureDelta[a], 0), maxTemperature[a]);
+        }
+    }
+
+    /**
+     * Write the temperatures back to the tiles.
+     */
+    void store() {
+        for (int a = 0; a < tileCount; a++) {
+            if (!tiles[a].isRemoved()) {
+                tiles[a].setTemperature(temperature[a]);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.nuclear;
+
+import static aztech.modern_industrialization.nuclear.NeutronFate.*;
+
+import aztech.modern_industrialization.machines.components.NuclearEfficiencyHistoryComponent;
+import java.util.Arrays;
+import java.util.Optional;
+import net.minecraft.util.RandomSource;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Neutron generation and random walk for a {@link NuclearGrid}.
+ *
+ * <p>
+ * The tick is split in three phases:
+ * <ul>
+ * <li>{@link #generate} runs the neutron generation ticks of the tiles on the server thread,
+ * then reads the interaction probabilities of each tile from its {@link INeutronBehaviour} into flat tables.</li>
+ * <li>{@link #walk} performs the random walk of the generated neutrons. It only touches the tables of this class and the random source,
+ * so it can run on another thread.</li>
+ * <li>{@link #apply} flushes the flux, absorption and heat that were accumulated during the walk to the tiles, on the server thread.</li>
+ * </ul>
+ *
+ * <p>
+ * All randomness comes from the {@link RandomSource} passed to the phases, in a fixed order,
+ * so the same grid state and the same seed always give the same result.
+ */
+final class NuclearNeutronTransport {
+    private static final int[] dX = { 1, 0, -1, 0 };
+    private static final int[] dY = { 0, 1, 0, -1 };
+
+    private static final int MAX_SPLIT = 30;
+
+    private static final int FAST = NeutronType.FAST.index;
+    private static final int THERMAL = NeutronType.THERMAL.index;
+
+    private final NuclearGrid grid;
+    private final int sizeX;
+    private final int sizeY;
+    private final INuclearTile[] tiles;
+    private final int tileCount;
+    /**
+     * For each grid cell (x-major): the index of the tile, or -1 if there is none.
+     */
+    private final int[] cellTile;
+    private final int[] tileX;
+    private final int[] tileY;
+
+    /**
+     * For each tile and neutron type: the total interaction probability, or 0 if the tile has no component.
+     */
+    private final double[] interactionProba;
+    /**
+     * For each tile and neutron type: the probability that an interaction is an absorption.
+     */
+    private final double[] absorptionProba;
+    private final double[] slowingProba;
+    private final boolean[] hasFuel;
+
+    /**
+     * For each tile and neutron type: the neutrons that went through or were absorbed by the tile during this tick.
+     */
+    private final int[] flux;
+    private final int[] absorbed;
+    /**
+     * For each tile: the neutrons generated during this tick, and the EU deposited by the walk.
+     */
+    private final int[] generated;
+    private final double[] heat;
+
+    NuclearNeutronTransport(NuclearGrid grid) {
+        this.grid = grid;
+        this.sizeX = grid.getSizeX();
+        this.sizeY = grid.getSizeY();
+
+        this.cellTile = new int[sizeX * sizeY];
+        int count = 0;
+        for (int i = 0; i < sizeX; i++) {
+            for (int j = 0; j < sizeY; j++) {
+                cellTile[i * sizeY + j] = grid.getNuclearTile(i, j) != null ? count++ : -1;
+            }
+        }
+
+        this.tileCount = count;
+        this.tiles = new INuclearTile[count];
+        this.tileX = new int[count];
+        this.tileY = new int[count];
+        for (int i = 0; i < sizeX; i++) {
+            for (int j = 0; j < sizeY; j++) {
+                int a = cellTile[i * sizeY + j];
+                if (a >= 0) {
+                    tiles[a] = grid.getNuclearTile(i, j);
+                    tileX[a] = i;
+                    tileY[a] = j;
+                }
+            }
+        }
+
+        this.interactionProba = new double[2 * count];
+        this.absorptionProba = new double[2 * count];
+        this.slowingProba = new double[count];
+        this.hasFuel = new boolean[count];
+        this.flux = new int[2 * count];
+        this.absorbed = new int[2 * count];
+        this.generated = new int[count];
+        this.heat = new double[count];
+    }
+
+    /**
+     * Run the neutron generation ticks of all tiles. Must be called on the server thread.
+     *
+     * @return true if any neutron was generated
+     */
+    boolean generate(NuclearEfficiencyHistoryComponent efficiencyHistory, RandomSource random) {
+        Arrays.fill(flux, 0);
+        Arrays.fill(absorbed, 0);
+        Arrays.fill(heat, 0);
+
+        boolean anyGenerated = false;
+
+        for (int a = 0; a < tileCount; a++) {
+            INuclearTile tile = tiles[a];
+
+            // Get fuel before the generation tick, because the fuel might be consumed!
+            Optional<NuclearFuel> maybeFuel = tile.getFuel();
+            int neutronNumberPrime = tile.neutronGenerationTick(efficiencyHistory, random);
+            generated[a] = neutronNumberPrime;
+            if (neutronNumberPrime == 0) {
+                continue;
+            }
+
+            anyGenerated = true;
+            NuclearFuel fuel = maybeFuel.orElseThrow(() -> new IllegalStateException("Neutron generated without fuel"));
+
+            tile.putHeat(neutronNumberPrime * fuel.directEUbyDesintegration / fuel.neutronMultiplicationFactor);
+        }
+
+        // Read the tables after the generation ticks, since they might have changed the components.
+        for (int a = 0; a < tileCount; a++) {
+            loadTile(a);
+        }
+
+        return anyGenerated;
+    }
+
+    /**
+     * Walk the neutrons generated by {@link #generate}. Doesn't access the tiles, so it may be called from any thread.
+     */
+    void walk(RandomSource random) {
+        for (int a = 0; a < tileCount; a++) {
+            int neutronNumberPrime = generated[a];
+            if (neutronNumberPrime == 0) {
+                continue;
+            }
+
+            int split = Math.min(neutronNumberPrime, MAX_SPLIT);
+            int neutronNumberPerSplit = neutronNumberPrime / split;
+
+            for (int k = 0; k < split + 1; k++) {
+                int neutronNumber = (k < split) ? neutronNumberPerSplit : neutronNumberPrime % split;
+
+                if (neutronNumber > 0) {
+                    walk(a, neutronNumber, random);
+                }
+            }
+        }
+    }
+
+    /**
+     * The EU deposited in each tile by the last {@link #walk}, indexed like the tiles of {@link NuclearHeatSolver}.
+     */
+    double[] getHeat() {
+        return heat;
+    }
+
+    /**
+     * Flush the results of the last {@link #walk} to the tiles. Must be called on the server thread.
+     */
+    void apply() {
+        for (int a = 0; a < tileCount; a++) {
+            if (tiles[a].isRemoved()) {
+                continue;
+            }
+            for (NeutronType type : NeutronType.TYPES) {
+                if (type == NeutronType.BOTH) {
+                    continue;
+                }
+                int i = 2 * a + type.index;
+                if (flux[i] != 0) {
+                    tiles[a].addNeutronsToFlux(flux[i], type);
+                }
+                if (absorbed[i] != 0) {
+                    tiles[a].absorbNeutrons(absorbed[i], type);
+                }
+            }
+            if (heat[a] != 0) {
+                // The temperature already includes this heat, see NuclearHeatSolver#addHeat.
+                tiles[a].recordEuGeneration(heat[a]);
+            }
+        }
+    }
+
+    private void loadTile(int a) {
+        INuclearTile tile = tiles[a];
+        @Nullable
+        INuclearComponent<?> component = tile.getComponent();
+
+        if (component != null) {
+            INeutronBehaviour behaviour = component.getNeutronBehaviour();
+            for (NeutronType type : NeutronType.TYPES) {
+                if (type == NeutronType.BOTH) {
+                    continue;
+                }
+                interactionProba[2 * a + type.index] = behaviour.interactionTotalProbability(type);
+                absorptionProba[2 * a + type.index] = behaviour.interactionRelativeProbability(type, NeutronInteraction.ABSORPTION);
+            }
+            slowingProba[a] = behaviour.neutronSlowingProbability();
+        } else {
+            interactionProba[2 * a + FAST] = interactionProba[2 * a + THERMAL] = 0;
+            absorptionProba[2 * a + FAST] = absorptionProba[2 * a + THERMAL] = 0;
+            slowingProba[a] = 0;
+        }
+        hasFuel[a] = tile.getFuel().isPresent();
+    }
+
+    /**
+     * Walk a bundle of fast neutrons starting from tile {@code start}, until it is absorbed or exits the grid.
+     */
+    private void walk(int start, int neutronNumber, RandomSource random) {
+        int type = FAST;
+        grid.registerNeutronCreation(neutronNumber, NeutronType.FAST);
+
+        int dir = random.nextInt(4);
+        int posX = tileX[start];
+        int posY = tileY[start];
+        int a = start;
+
+        while (true) {
+            flux[2 * a + type] += neutronNumber;
+
+            double interaction = interactionProba[2 * a + type];
+            if (interaction > 0 && random.nextDouble() < interaction) {
+                if (random.nextDouble() <= absorptionProba[2 * a + type]) {
+                    absorbed[2 * a + type] += neutronNumber;
+
+                    if (type == FAST) {
+                        heat[a] += neutronNumber * NuclearConstant.EU_FOR_FAST_NEUTRON;
+                    }
+
+                    grid.registerNeutronFate(neutronNumber, typeOf(type), hasFuel[a] ? ABSORBED_IN_FUEL : ABSORBED_NOT_IN_FUEL);
+                    return;
+                } else {
+                    dir = random.nextInt(4);
+
+                    if (type == FAST && random.nextDouble() < slowingProba[a]) {
+                        type = THERMAL;
+                        heat[a] += neutronNumber * NuclearConstant.EU_FOR_FAST_NEUTRON;
+                    }
+                }
+            }
+
+            posX += dX[dir];
+            posY += dY[dir];
+
+            if (posX < 0 || posX >= sizeX || posY < 0 || posY >= sizeY || (a = cellTile[posX * sizeY + posY]) < 0) {
+                grid.registerNeutronFate(neutronNumber, typeOf(type), ESCAPE);
+                return;
+            }
+        }
+    }
+
+    private static NeutronType typeOf(int index) {
+        return index == FAST ? NeutronType.FAST : NeutronType.THERMAL;
+    }
+}
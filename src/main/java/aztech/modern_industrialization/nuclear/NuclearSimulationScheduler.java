@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.nuclear;
+
+import aztech.modern_industrialization.MIConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+/**
+ * Runs the {@linkplain NuclearGridHelper#compute compute phase} of all the reactors of a level in parallel.
+ *
+ * <p>
+ * Reactors {@linkplain #schedule schedule} their computation during their tick, after having {@linkplain NuclearGridHelper#prepare prepared}
+ * their grid. At the end of the level tick, all computations are run on a dedicated pool, and once they have all completed,
+ * the finish callbacks are run on the server thread, in scheduling order.
+ */
+public final class NuclearSimulationScheduler {
+    private NuclearSimulationScheduler() {
+    }
+
+    private record Task(Runnable compute, Runnable finish) {
+    }
+
+    private static final List<Task> pending = new ArrayList<>();
+    private static ForkJoinPool pool;
+
+    /**
+     * Return true if reactors should schedule their computation instead of simulating directly.
+     */
+    public static boolean isEnabled() {
+        return MIConfig.getConfig().parallelNuclearSimulation;
+    }
+
+    /**
+     * Schedule a computation for the end of the current level tick. Must be called on the server thread.
+     *
+     * @param compute Run on a simulation thread. It must not access the level or the block entities.
+     * @param finish  Run on the server thread once all the computations of the tick have completed.
+     */
+    public static void schedule(Runnable compute, Runnable finish) {
+        pending.add(new Task(compute, finish));
+    }
+
+    private static void runPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Task> tasks = new ArrayList<>(pending);
+        pending.clear();
+
+        if (tasks.size() == 1) {
+            tasks.get(0).compute.run();
+        } else {
+            List<ForkJoinTask<?>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(getPool().submit(task.compute));
+            }
+            // Wait for all computations, and rethrow any exception on the server thread.
+            for (ForkJoinTask<?> future : futures) {
+                future.join();
+            }
+        }
+
+        for (Task task : tasks) {
+            task.finish.run();
+        }
+    }
+
+    private static ForkJoinPool getPool() {
+        if (pool == null) {
+            AtomicInteger threadId = new AtomicInteger();
+            int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            pool = new ForkJoinPool(parallelism, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("MI Nuclear Simulation #" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+    static {
+        ServerTickEvents.END_WORLD_TICK.register(world -> runPending());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> pending.clear());
+    }
+}
@@ -23,6 +23,10 @@
  */
 package aztech.modern_industrialization.pipes.api;
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import java.util.*;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
@@ -39,23 +43,46 @@ public abstract class PipeNetwork {
     public PipeNetworkManager manager;
     public PipeNetworkData data;
     private final Map<BlockPos, PipeNetworkNode> nodes = new HashMap<>();
-    private final Map<Long, Map<BlockPos, PipeNetworkNode>> nodesByChunk = new HashMap<>();
-    private final List<PosNode> tickingNodesCache = new ArrayList<>();
-    boolean tickingCacheValid = false;
+    /**
+     * The loaded nodes that are in ticking chunks. Maintained incrementally by {@link #setNode}, {@link #removeNode}
+     * and {@link #updateTicking}, so that iterating it is just an array scan.
+     */
+    private final ObjectArrayList<PosNode> tickingNodes = new ObjectArrayList<>();
+    /**
+     * Index of each ticking node in {@link #tickingNodes}, by {@link BlockPos#asLong}.
+     */
+    private final Long2IntOpenHashMap tickingNodeIndex = new Long2IntOpenHashMap();
+    /**
+     * All the shards that might contain nodes of this network, including shards that are not loaded yet.
+     * May contain a few extra shards, which are pruned when the network is saved.
+     */
+    final LongSet shards = new LongOpenHashSet();
+    /**
+     * Number of nodes of this network in each loaded shard.
+     */
+    private final Long2IntOpenHashMap nodesPerShard = new Long2IntOpenHashMap();
 
     public PipeNetwork(int id, PipeNetworkData data) {
         this.id = id;
         this.data = data;
+        this.tickingNodeIndex.defaultReturnValue(-1);
     }
 
     public void fromTag(CompoundTag tag) {
         id = tag.getInt("id");
         data.fromTag(tag.getCompound("data"));
+        shards.clear();
+        for (long shard : tag.getLongArray("shards")) {
+            shards.add(shard);
+        }
     }
 
     public CompoundTag toTag(CompoundTag tag) {
         tag.putInt("id", id);
         tag.put("data", data.toTag(new CompoundTag()));
+        // Forget about loaded shards that don't contain any node of this network anymore.
+        shards.removeIf(shard -> manager.isShardLoaded(shard) && !nodesPerShard.containsKey(shard));
+        tag.putLongArray("shards", shards.toLongArray());
         return tag;
     }
 
@@ -90,45 +117,101 @@ public abstract class PipeNetwork {
     }
 
     public void setNode(BlockPos pos, @Nullable PipeNetworkNode node) {
+        if (!this.nodes.containsKey(pos)) {
+            long shard = PipeNetworkManager.getShard(pos);
+            nodesPerShard.addTo(shard, 1);
+            if (shards.add(shard)) {
+                // The list of shards is saved with the network.
+                manager.markIndexDirty();
+            }
+        }
         this.nodes.put(pos.immutable(), node);
-
-        this.nodesByChunk.computeIfAbsent(ChunkPos.asLong(pos), p -> new HashMap<>()).put(pos.immutable(), node);
+        // noinspection deprecation
+        updateTicking(pos, manager.tickingChunks.contains(ChunkPos.asLong(pos)));
     }
 
     public void removeNode(BlockPos pos) {
+        if (this.nodes.containsKey(pos)) {
+            long shard = PipeNetworkManager.getShard(pos);
+            if (nodesPerShard.addTo(shard, -1) == 1) {
+                nodesPerShard.remove(shard);
+            }
+        }
         this.nodes.remove(pos);
+        updateTicking(pos, false);
+    }
+
+    /**
+     * Add or remove the node at some position from the ticking nodes.
+     * Called by the manager when the chunk of the node starts or stops ticking.
+     */
+    void updateTicking(BlockPos pos, boolean chunkTicking) {
+        @Nullable
+        PipeNetworkNode node = chunkTicking ? nodes.get(pos) : null;
+        long key = pos.asLong();
+        int index = tickingNodeIndex.get(key);
+
+        if (node != null) {
+            if (index >= 0) {
+                if (tickingNodes.get(index).getNode() == node) {
+                    return;
+                }
+                tickingNodes.set(index, new PosNode(pos.immutable(), node));
+            } else {
+                tickingNodeIndex.put(key, tickingNodes.size());
+                tickingNodes.add(new PosNode(pos.immutable(), node));
+            }
+        } else {
+            if (index < 0) {
+                return;
+            }
+            // Swap with the last node to keep the array compact.
+            PosNode last = tickingNodes.pop();
+            if (index < tickingNodes.size()) {
+                tickingNodes.set(index, last);
+                tickingNodeIndex.put(last.getPos().asLong(), index);
+            }
+            tickingNodeIndex.remove(key);
+        }
+        onTickingNodesChanged();
+    }
 
-        long chunk = ChunkPos.asLong(pos);
-        Map<BlockPos, PipeNetworkNode> map = nodesByChunk.get(chunk);
-        map.remove(pos);
-        if (map.size() == 0) {
-            nodesByChunk.remove(chunk);
+    /**
+     * Return true if all the shards that might contain nodes of this network are loaded,
+     * i.e. if {@link #getRawNodeMap} contains all the nodes of this network.
+     */
+    public boolean isFullyLoaded() {
+        for (long shard : shards) {
+            if (!manager.isShardLoaded(shard)) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Must be called when the {@link #data} of this network is modified in place, so that it gets saved.
+     */
+    public void markDataDirty() {
+        manager.markIndexDirty();
     }
 
     public Map<BlockPos, PipeNetworkNode> getRawNodeMap() {
         return Collections.unmodifiableMap(this.nodes);
     }
 
-    public Collection<PosNode> iterateTickingNodes() {
-        if (!tickingCacheValid) {
-            tickingNodesCache.clear();
-            for (var chunkEntry : this.nodesByChunk.entrySet()) {
-                // noinspection deprecation
-                if (manager.tickingChunks.contains(chunkEntry.getKey())) {
-                    for (var entry : chunkEntry.getValue().entrySet()) {
-                        var node = entry.getValue();
-                        // no idea how the chunk can be ticking and the node null,
-                        // but it happens on the aof5 public server apparently...
-                        if (node != null) {
-                            tickingNodesCache.add(new PosNode(entry.getKey(), node));
-                        }
-                    }
-                }
-            }
-            tickingCacheValid = true;
-        }
-        return tickingNodesCache;
+    /**
+     * The loaded nodes in ticking chunks. The returned list must not be modified,
+     * and it may change when nodes are added, removed, loaded or unloaded, or when chunks start or stop ticking.
+     */
+    public List<PosNode> iterateTickingNodes() {
+        return tickingNodes;
+    }
+
+    /**
+     * Called every time a node is added to or removed from the {@linkplain #iterateTickingNodes ticking nodes}.
+     */
+    protected void onTickingNodesChanged() {
     }
 
     public static class PosNode {
@@ -23,12 +23,15 @@
  */
 package aztech.modern_industrialization.pipes.api;
 
+import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.pipes.MIPipes;
 import aztech.modern_industrialization.util.NbtHelper;
 import aztech.modern_industrialization.util.WorldHelper;
 import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.*;
 import java.util.*;
+import java.util.function.LongConsumer;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -43,15 +46,42 @@ import org.jetbrains.annotations.Nullable;
 public class PipeNetworkManager {
     private static final boolean DEBUG_CHECKS = FabricLoader.getInstance().isDevelopmentEnvironment();
 
-    private final Map<BlockPos, PipeNetwork> networkByBlock = new HashMap<>();
-    private final Map<BlockPos, Set<Direction>> links = new HashMap<>();
-    private final Set<PipeNetwork> networks = new HashSet<>();
+    /**
+     * The network of every node, by {@link BlockPos#asLong}.
+     */
+    private final Long2ObjectOpenHashMap<PipeNetwork> networkByBlock = new Long2ObjectOpenHashMap<>();
+    /**
+     * The links of every node, by {@link BlockPos#asLong}, as a mask of {@link Direction#get3DDataValue} bits.
+     * Has the same keys as {@link #networkByBlock}.
+     */
+    private final Long2ByteOpenHashMap links = new Long2ByteOpenHashMap();
+    private final Int2ObjectOpenHashMap<PipeNetwork> networks = new Int2ObjectOpenHashMap<>();
     private int nextNetworkId = 0;
     private final PipeNetworkType type;
 
-    private final Map<Long, Set<BlockPos>> spannedChunks = new HashMap<>();
+    /**
+     * Nodes and links are saved in shards of 32x32 chunks, which are only loaded when they are accessed,
+     * and only saved when they are modified. Network data is saved separately in the index.
+     */
+    private final Long2ObjectOpenHashMap<LongSet> nodesByShard = new Long2ObjectOpenHashMap<>();
+    private final LongSet loadedShards = new LongOpenHashSet();
+    private final LongSet dirtyShards = new LongOpenHashSet();
+    private boolean indexDirty = false;
+    @Nullable
+    private LongConsumer shardLoader = null;
+
+    /**
+     * The positions of the loaded nodes in every chunk.
+     */
+    private final Long2ObjectOpenHashMap<LongSet> spannedChunks = new Long2ObjectOpenHashMap<>();
     protected LongSet tickingChunks = new LongOpenHashSet();
     protected LongSet lastTickingChunks = new LongOpenHashSet();
+    /**
+     * Chunks containing nodes whose saved state changed during the current tick.
+     */
+    private final LongSet dirtyChunks = new LongOpenHashSet();
+    private int chunksDirtiedSinceSave = 0;
+    private int chunksDirtiedLastSave = 0;
 
     public PipeNetworkManager(PipeNetworkType type) {
         this.type = type;
@@ -65,28 +95,31 @@ public class PipeNetworkManager {
         updateTickingChunks(world);
 
         // Actual ticking
-        for (PipeNetwork network : networks) {
+        for (PipeNetwork network : networks.values()) {
             network.tick(world);
         }
 
-        // Mark pipes in ticking chunks as dirty.
-        for (long chunkPos : tickingChunks) {
+        // Mark the chunks of the pipes that changed as dirty.
+        for (long chunkPos : dirtyChunks) {
             int chunkX = ChunkPos.getX(chunkPos);
             int chunkZ = ChunkPos.getZ(chunkPos);
             var chunk = world.getChunk(chunkX, chunkZ, ChunkStatus.FULL, false);
             if (chunk != null) {
+                if (!chunk.isUnsaved()) {
+                    chunksDirtiedSinceSave++;
+                }
                 chunk.setUnsaved(true);
-            } else {
+            } else if (tickingChunks.contains(chunkPos)) {
                 // This is not supposed to happen.
                 var sb = new StringBuilder();
                 sb.append("MI pipes issue: ticking spanned chunk was not loaded anymore. Please report this.\n");
                 sb.append(" - Pipe type: ").append(type.getIdentifier()).append("\n");
                 sb.append(" - Chunk: %d,%d\n".formatted(chunkX, chunkZ));
                 sb.append(" - Blocks in chunk:\n");
-                for (var it = spannedChunks.get(chunkPos).stream().sorted().iterator(); it.hasNext();) {
+                for (var it = spannedChunks.get(chunkPos).longStream().mapToObj(BlockPos::of).sorted().iterator(); it.hasNext();) {
                     var pos = it.next();
                     sb.append("   - Pos: %d %d %d\n".formatted(pos.getX(), pos.getY(), pos.getZ()));
-                    var network = networkByBlock.get(pos);
+                    var network = networkByBlock.get(pos.asLong());
                     var node = network == null ? "none" : network.getNode(pos) == null ? "not loaded" : "loaded";
                     sb.append("   - Has network (should be true): %s\n".formatted(network != null));
                     sb.append("   - Node status (should be loaded): %s\n".formatted(node));
@@ -94,10 +127,36 @@ public class PipeNetworkManager {
                 throw new UnsupportedOperationException(sb.toString());
             }
         }
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Must be called when the saved state of a node changes while its network ticks,
+     * so that the chunk of the node gets saved.
+     */
+    public void markNodeDirty(BlockPos pos) {
+        dirtyChunks.add(ChunkPos.asLong(pos));
+    }
+
+    /**
+     * Return the number of chunks that were marked as unsaved because of the pipes of this manager
+     * between the last two saves.
+     */
+    public int getChunksDirtiedLastSave() {
+        return chunksDirtiedLastSave;
+    }
+
+    /**
+     * Called when the level is saved, to update {@link #getChunksDirtiedLastSave}.
+     */
+    public void onLevelSaved() {
+        chunksDirtiedLastSave = chunksDirtiedSinceSave;
+        chunksDirtiedSinceSave = 0;
     }
 
     public boolean hasNode(BlockPos pos) {
-        return networkByBlock.containsKey(pos);
+        ensureShardLoaded(pos);
+        return networkByBlock.containsKey(pos.asLong());
     }
 
     private void updateTickingChunks(ServerLevel world) {
@@ -106,33 +165,48 @@ public class PipeNetworkManager {
         lastTickingChunks = tmp;
         Preconditions.checkState(tickingChunks.isEmpty(), "Internal pipe network error.");
 
-        for (Map.Entry<Long, Set<BlockPos>> entry : spannedChunks.entrySet()) {
-            long chunk = entry.getKey();
+        for (var entry : Long2ObjectMaps.fastIterable(spannedChunks)) {
+            long chunk = entry.getLongKey();
             if (WorldHelper.isChunkTicking(world, chunk)) {
                 tickingChunks.add(chunk);
 
                 if (!lastTickingChunks.remove(chunk)) {
                     // New ticking chunk
-                    notifyTickingChanged(entry.getValue());
+                    notifyTickingChanged(entry.getValue(), true);
                 }
             }
         }
         // Chunk that isn't ticking anymore
-        for (Long notTickingChunk : lastTickingChunks) {
-            notifyTickingChanged(spannedChunks.get(notTickingChunk));
+        for (LongIterator it = lastTickingChunks.iterator(); it.hasNext();) {
+            notifyTickingChanged(spannedChunks.get(it.nextLong()), false);
         }
         lastTickingChunks.clear();
     }
 
-    private void notifyTickingChanged(@Nullable Set<BlockPos> positionsInChunk) {
+    private void notifyTickingChanged(@Nullable LongSet positionsInChunk, boolean ticking) {
         if (positionsInChunk != null) {
-            for (BlockPos pos : positionsInChunk) {
+            for (LongIterator it = positionsInChunk.iterator(); it.hasNext();) {
+                long pos = it.nextLong();
                 PipeNetwork network = networkByBlock.get(pos);
-                network.tickingCacheValid = false;
+                network.updateTicking(BlockPos.of(pos), ticking);
             }
         }
     }
 
+    private static byte directionBit(Direction direction) {
+        return (byte) (1 << direction.get3DDataValue());
+    }
+
+    private void addLinkBit(BlockPos pos, Direction direction) {
+        long key = pos.asLong();
+        links.put(key, (byte) (links.get(key) | directionBit(direction)));
+    }
+
+    private void removeLinkBit(BlockPos pos, Direction direction) {
+        long key = pos.asLong();
+        links.put(key, (byte) (links.get(key) & ~directionBit(direction)));
+    }
+
     /**
      * Add a network link and merge networks if necessary. Both the node at pos and
      * the node at pos + direction must exist in the network.
@@ -145,14 +219,18 @@ public class PipeNetworkManager {
 
         // Add links
         BlockPos otherPos = pos.relative(direction);
-        links.get(pos).add(direction);
-        links.get(otherPos).add(direction.getOpposite());
+        addLinkBit(pos, direction);
+        addLinkBit(otherPos, direction.getOpposite());
+        markShardDirty(pos);
+        markShardDirty(otherPos);
 
         // If the networks are different, we merge all nodes into `network`. We don't
         // change other links.
-        PipeNetwork network = networkByBlock.get(pos);
-        PipeNetwork otherNetwork = networkByBlock.get(otherPos);
+        PipeNetwork network = networkByBlock.get(pos.asLong());
+        PipeNetwork otherNetwork = networkByBlock.get(otherPos.asLong());
         if (network != otherNetwork) {
+            // All the nodes of the other network are moved, so they must be loaded.
+            ensureNetworkLoaded(otherNetwork);
             if (!network.data.equals(otherNetwork.data)) {
                 network.data = network.merge(otherNetwork);
             }
@@ -162,7 +240,8 @@ public class PipeNetworkManager {
                 if (node != null) {
                     node.network = network;
                 }
-                networkByBlock.put(nodePos, network);
+                networkByBlock.put(nodePos.asLong(), network);
+                markShardDirty(nodePos);
                 network.setNode(nodePos, node);
             }
             var nodesCopy = new ArrayList<>(otherNetwork.getRawNodeMap().keySet());
@@ -170,9 +249,8 @@ public class PipeNetworkManager {
                 otherNetwork.removeNode(nodePos);
             }
             otherNetwork.onRemove();
-            networks.remove(otherNetwork);
+            removeNetwork(otherNetwork);
         }
-        network.tickingCacheValid = false;
         checkStateCoherence();
     }
 
@@ -186,43 +264,62 @@ public class PipeNetworkManager {
 
         // Remove links
         BlockPos otherPos = pos.relative(direction);
-        links.get(pos).remove(direction);
-        links.get(otherPos).remove(direction.getOpposite());
-
-        // Run a DFS to mark all disconnected nodes.
-        PipeNetwork network = networkByBlock.get(pos);
-        Map<BlockPos, PipeNetworkNode> unvisitedNodes = new HashMap<>(network.getRawNodeMap());
-        network.tickingCacheValid = false;
-
-        class Dfs {
-            private void dfs(BlockPos currentPos) {
-                // warning: don't try to use the return value of Map#remove, because it might be
-                // null if the node is not loaded.
-                if (!unvisitedNodes.containsKey(currentPos)) {
-                    return;
+        ensureShardLoaded(otherPos);
+        removeLinkBit(pos, direction);
+        removeLinkBit(otherPos, direction.getOpposite());
+        markShardDirty(pos);
+        markShardDirty(otherPos);
+
+        // Search from both ends of the removed link at the same time, one node per side in turn.
+        // If the searches meet, the network is still connected.
+        // Otherwise, the side that runs out of nodes first is the smaller component, and it is moved to a new network.
+        // This way, the cost is proportional to the size of the smaller component.
+        PipeNetwork network = networkByBlock.get(pos.asLong());
+        LongOpenHashSet[] visited = { new LongOpenHashSet(), new LongOpenHashSet() };
+        LongArrayFIFOQueue[] queues = { new LongArrayFIFOQueue(), new LongArrayFIFOQueue() };
+        visited[0].add(pos.asLong());
+        queues[0].enqueue(pos.asLong());
+        visited[1].add(otherPos.asLong());
+        queues[1].enqueue(otherPos.asLong());
+
+        @Nullable
+        LongSet disconnectedNodes = null;
+        search: while (true) {
+            for (int side = 0; side < 2; ++side) {
+                if (queues[side].isEmpty()) {
+                    disconnectedNodes = visited[side];
+                    break search;
                 }
-                unvisitedNodes.remove(currentPos);
-                for (Direction direction : links.get(currentPos)) {
-                    dfs(currentPos.relative(direction));
+                long currentPos = queues[side].dequeueLong();
+                // Links are only saved in the shard of the node, so it must be loaded before they are read.
+                ensureShardLoaded(getShard(currentPos));
+                byte nodeLinks = links.get(currentPos);
+                for (Direction linkDirection : Direction.values()) {
+                    if ((nodeLinks & directionBit(linkDirection)) != 0) {
+                        long nextPos = BlockPos.offset(currentPos, linkDirection);
+                        if (visited[1 - side].contains(nextPos)) {
+                            break search;
+                        }
+                        if (visited[side].add(nextPos)) {
+                            queues[side].enqueue(nextPos);
+                        }
+                    }
                 }
             }
         }
 
-        // Try to put all nodes in the current network
-        Dfs dfs = new Dfs();
-        dfs.dfs(pos);
-
-        // If it was not possible, create a new network and transfer all unvisitedNodes
-        // to it.
-        if (unvisitedNodes.size() > 0) {
+        // If the network was split, create a new network and transfer the disconnected nodes to it.
+        if (disconnectedNodes != null) {
             PipeNetwork newNetwork = createNetwork(network.data.clone());
-            for (Map.Entry<BlockPos, PipeNetworkNode> entry : unvisitedNodes.entrySet()) {
-                PipeNetworkNode node = entry.getValue();
-                BlockPos nodePos = entry.getKey();
+            for (LongIterator it = disconnectedNodes.iterator(); it.hasNext();) {
+                BlockPos nodePos = BlockPos.of(it.nextLong());
+                // warning: the node might be null if it is not loaded.
+                PipeNetworkNode node = network.getNode(nodePos);
                 if (node != null) {
                     node.network = newNetwork;
                 }
-                networkByBlock.put(nodePos, newNetwork);
+                networkByBlock.put(nodePos.asLong(), newNetwork);
+                markShardDirty(nodePos);
                 newNetwork.setNode(nodePos, node);
                 network.removeNode(nodePos);
             }
@@ -234,8 +331,8 @@ public class PipeNetworkManager {
      * Check if a link exists.
      */
     public boolean hasLink(BlockPos pos, Direction direction) {
-        var nodeLinks = links.get(pos);
-        return nodeLinks != null && nodeLinks.contains(direction);
+        ensureShardLoaded(pos);
+        return (links.get(pos.asLong()) & directionBit(direction)) != 0;
     }
 
     /**
@@ -243,26 +340,42 @@ public class PipeNetworkManager {
      */
     public boolean canLink(BlockPos pos, Direction direction, boolean forceLink) {
         BlockPos otherPos = pos.relative(direction);
-        PipeNetwork network = networkByBlock.get(pos);
-        PipeNetwork otherNetwork = networkByBlock.get(otherPos);
-        return otherNetwork != null && (network.data.equals(otherNetwork.data) || forceLink && network.merge(otherNetwork) != null);
+        ensureShardLoaded(pos);
+        ensureShardLoaded(otherPos);
+        PipeNetwork network = networkByBlock.get(pos.asLong());
+        PipeNetwork otherNetwork = networkByBlock.get(otherPos.asLong());
+        if (otherNetwork == null) {
+            return false;
+        }
+        if (network.data.equals(otherNetwork.data)) {
+            return true;
+        }
+        if (!forceLink) {
+            return false;
+        }
+        // Whether the networks can be merged may depend on all of their nodes.
+        ensureNetworkLoaded(network);
+        ensureNetworkLoaded(otherNetwork);
+        return network.merge(otherNetwork) != null;
     }
 
     /**
      * Add a node and create a new network for it.
      */
     public void addNode(PipeNetworkNode node, BlockPos pos, PipeNetworkData data) {
-        if (networkByBlock.containsKey(pos))
+        ensureShardLoaded(pos);
+        if (networkByBlock.containsKey(pos.asLong()))
             throw new IllegalArgumentException("Cannot add a node that is already in the network.");
 
         PipeNetwork network = createNetwork(data.clone());
         if (node != null) {
             node.network = network;
         }
-        networkByBlock.put(pos.immutable(), network);
+        networkByBlock.put(pos.asLong(), network);
+        addToShard(pos);
         incrementSpanned(pos);
         network.setNode(pos, node);
-        links.put(pos.immutable(), new HashSet<>());
+        links.put(pos.asLong(), (byte) 0);
         checkStateCoherence();
     }
 
@@ -270,15 +383,17 @@ public class PipeNetworkManager {
      * Remove a node and its network. Will remove all remaining links.
      */
     public void removeNode(BlockPos pos) {
+        ensureShardLoaded(pos);
         for (Direction direction : Direction.values()) {
             removeLink(pos, direction);
         }
 
-        PipeNetwork network = networkByBlock.remove(pos);
+        PipeNetwork network = networkByBlock.remove(pos.asLong());
+        removeFromShard(pos);
         decrementSpanned(pos);
         network.onRemove();
-        networks.remove(network);
-        links.remove(pos);
+        removeNetwork(network);
+        links.remove(pos.asLong());
         checkStateCoherence();
     }
 
@@ -286,7 +401,8 @@ public class PipeNetworkManager {
      * Should be called when a node is loaded, it will link the node to its network.
      */
     public void nodeLoaded(PipeNetworkNode node, BlockPos pos) {
-        PipeNetwork network = networkByBlock.get(pos);
+        ensureShardLoaded(pos);
+        PipeNetwork network = networkByBlock.get(pos.asLong());
         if (network == null) {
             // The network is null! That probably means that the node doesn't exist, e.g.
             // because a pipe was moved with Carrier.
@@ -300,7 +416,6 @@ public class PipeNetworkManager {
         } else {
             node.network = network;
             network.setNode(pos, node);
-            network.tickingCacheValid = false;
         }
         incrementSpanned(pos);
         checkStateCoherence();
@@ -312,7 +427,6 @@ public class PipeNetworkManager {
      */
     public void nodeUnloaded(PipeNetworkNode node, BlockPos pos) {
         node.network.setNode(pos, null);
-        node.network.tickingCacheValid = false;
         decrementSpanned(pos);
         checkStateCoherence();
     }
@@ -324,24 +438,182 @@ public class PipeNetworkManager {
         PipeNetwork network = type.getNetworkCtor().apply(nextNetworkId, data);
         network.manager = this;
         nextNetworkId++;
-        networks.add(network);
+        networks.put(network.id, network);
+        markIndexDirty();
         checkStateCoherence();
         return network;
     }
 
+    private void removeNetwork(PipeNetwork network) {
+        networks.remove(network.id);
+        markIndexDirty();
+    }
+
     private void incrementSpanned(BlockPos pos) {
-        spannedChunks.computeIfAbsent(ChunkPos.asLong(pos), p -> new HashSet<>()).add(pos.immutable());
+        spannedChunks.computeIfAbsent(ChunkPos.asLong(pos), p -> new LongOpenHashSet()).add(pos.asLong());
     }
 
     private void decrementSpanned(BlockPos pos) {
         long chunkPos = ChunkPos.asLong(pos);
-        Set<BlockPos> set = spannedChunks.get(chunkPos);
-        set.remove(pos);
+        LongSet set = spannedChunks.get(chunkPos);
+        set.remove(pos.asLong());
         if (set.size() == 0) {
             spannedChunks.remove(chunkPos);
         }
     }
 
+    private void addToShard(BlockPos pos) {
+        nodesByShard.computeIfAbsent(getShard(pos), p -> new LongOpenHashSet()).add(pos.asLong());
+        markShardDirty(pos);
+    }
+
+    private void removeFromShard(BlockPos pos) {
+        long shard = getShard(pos);
+        LongSet set = nodesByShard.get(shard);
+        set.remove(pos.asLong());
+        if (set.size() == 0) {
+            nodesByShard.remove(shard);
+        }
+        dirtyShards.add(shard);
+    }
+
+    /**
+     * Get the shard containing some position. Every shard is a region of 32x32 chunks.
+     */
+    public static long getShard(BlockPos pos) {
+        return ChunkPos.asLong(pos.getX() >> 9, pos.getZ() >> 9);
+    }
+
+    private static long getShard(long pos) {
+        return ChunkPos.asLong(BlockPos.getX(pos) >> 9, BlockPos.getZ(pos) >> 9);
+    }
+
+    /**
+     * Set the callback used to load shards that are accessed for the first time.
+     * The callback must call {@link #loadShard} on this manager.
+     */
+    public void setShardLoader(@Nullable LongConsumer shardLoader) {
+        this.shardLoader = shardLoader;
+    }
+
+    public boolean isShardLoaded(long shard) {
+        return loadedShards.contains(shard);
+    }
+
+    private void ensureShardLoaded(BlockPos pos) {
+        ensureShardLoaded(getShard(pos));
+    }
+
+    private void ensureShardLoaded(long shard) {
+        if (!loadedShards.contains(shard)) {
+            if (shardLoader != null) {
+                shardLoader.accept(shard);
+            }
+            // Never try to load the same shard twice, even if the loader failed.
+            loadedShards.add(shard);
+        }
+    }
+
+    /**
+     * Make sure that all the nodes of a network are loaded.
+     */
+    private void ensureNetworkLoaded(PipeNetwork network) {
+        // Copy because loading shards can add to the set.
+        for (long shard : network.shards.toLongArray()) {
+            ensureShardLoaded(shard);
+        }
+    }
+
+    private void markShardDirty(BlockPos pos) {
+        dirtyShards.add(getShard(pos));
+    }
+
+    /**
+     * Mark a shard as dirty again, for example because it could not be saved.
+     */
+    public void markShardDirty(long shard) {
+        if (loadedShards.contains(shard)) {
+            dirtyShards.add(shard);
+        }
+    }
+
+    void markIndexDirty() {
+        indexDirty = true;
+    }
+
+    public boolean isIndexDirty() {
+        return indexDirty;
+    }
+
+    public LongSet getDirtyShards() {
+        return LongSets.unmodifiable(dirtyShards);
+    }
+
+    /**
+     * Load the nodes and links of a shard.
+     * 
+     * @param tag The tag previously returned by {@link #saveShard}, or null if there is nothing saved for this shard.
+     */
+    public void loadShard(long shard, @Nullable CompoundTag tag) {
+        if (!loadedShards.add(shard)) {
+            return;
+        }
+        if (tag != null) {
+            readNodes(tag.getIntArray("nodes"));
+        }
+        checkStateCoherence();
+    }
+
+    /**
+     * Save the nodes and links of a shard, and mark it as not dirty anymore.
+     * 
+     * @return The saved tag, or null if the shard is empty.
+     */
+    @Nullable
+    public CompoundTag saveShard(long shard) {
+        dirtyShards.remove(shard);
+        LongSet positions = nodesByShard.get(shard);
+        if (positions == null) {
+            return null;
+        }
+
+        // Every entry is identified by five consecutive integers: x, y, z, network id, encoded links
+        int[] nodesData = new int[positions.size() * 5];
+        int i = 0;
+        for (LongIterator it = positions.iterator(); it.hasNext();) {
+            long pos = it.nextLong();
+            nodesData[i++] = BlockPos.getX(pos);
+            nodesData[i++] = BlockPos.getY(pos);
+            nodesData[i++] = BlockPos.getZ(pos);
+            nodesData[i++] = networkByBlock.get(pos).id;
+            nodesData[i++] = links.get(pos);
+        }
+        CompoundTag tag = new CompoundTag();
+        tag.putIntArray("nodes", nodesData);
+        return tag;
+    }
+
+    private void readNodes(int[] data) {
+        for (int i = 0; i < data.length / 5; i++) {
+            BlockPos pos = new BlockPos(data[5 * i], data[5 * i + 1], data[5 * i + 2]);
+            int networkId = data[5 * i + 3];
+            PipeNetwork network = networks.get(networkId);
+            if (network == null) {
+                // The node will be recreated if the pipe is still there.
+                ModernIndustrialization.LOGGER.warn("Skipping pipe node of type {} at position {} with unknown network id {}.", type.getIdentifier(),
+                        pos, networkId);
+                continue;
+            }
+            if (networkByBlock.containsKey(pos.asLong())) {
+                continue;
+            }
+            networkByBlock.put(pos.asLong(), network);
+            nodesByShard.computeIfAbsent(getShard(pos), p -> new LongOpenHashSet()).add(pos.asLong());
+            network.setNode(pos, null);
+            links.put(pos.asLong(), (byte) (data[5 * i + 4] & 0b111111));
+        }
+    }
+
     public void fromNbt(CompoundTag tag) {
         // networks
         ListTag networksTag = tag.getList("networks", new CompoundTag().getId());
@@ -349,53 +621,43 @@ public class PipeNetworkManager {
             PipeNetwork network = type.getNetworkCtor().apply(-1, null);
             network.manager = this;
             network.fromTag((CompoundTag) networkTag);
-            networks.add(network);
-        }
-
-        // networkByBlock and links
-        Map<Integer, PipeNetwork> networkIds = new HashMap<>();
-        for (PipeNetwork network : networks) {
-            networkIds.put(network.id, network);
-        }
-        int[] data = tag.getIntArray("networkByBlock");
-        for (int i = 0; i < data.length / 5; i++) {
-            PipeNetwork network = networkIds.get(data[5 * i + 3]);
-            BlockPos pos = new BlockPos(data[5 * i], data[5 * i + 1], data[5 * i + 2]);
-            networkByBlock.put(pos, network);
-            network.setNode(pos, null);
-            links.put(pos, new HashSet<>(Arrays.asList(NbtHelper.decodeDirections((byte) data[5 * i + 4]))));
+            networks.put(network.id, network);
         }
 
         // nextNetworkId
         nextNetworkId = tag.getInt("nextNetworkId");
+
+        // Old saves store all the nodes and links together with the networks.
+        // Load everything now, and mark the shards as dirty to move the nodes to the shards on the next save.
+        if (tag.contains("networkByBlock")) {
+            int[] data = tag.getIntArray("networkByBlock");
+            for (int i = 0; i < data.length / 5; i++) {
+                long shard = getShard(new BlockPos(data[5 * i], data[5 * i + 1], data[5 * i + 2]));
+                loadedShards.add(shard);
+                dirtyShards.add(shard);
+            }
+            readNodes(data);
+            markIndexDirty();
+        }
         checkStateCoherence();
     }
 
+    /**
+     * Save the index, i.e. the networks. Nodes and links are saved separately with {@link #saveShard}.
+     */
     public CompoundTag toTag(CompoundTag tag) {
         // networks
         List<CompoundTag> networksTags = new ArrayList<>();
-        for (PipeNetwork network : networks) {
+        for (PipeNetwork network : networks.values()) {
             networksTags.add(network.toTag(new CompoundTag()));
         }
         ListTag networksTag = new ListTag();
         networksTag.addAll(networksTags);
         tag.put("networks", networksTag);
 
-        // networkByBlock and links, every entry is identified by five consecutive
-        // integers: x, y, z, network id, encoded links
-        int[] networkByBlockData = new int[networkByBlock.size() * 5];
-        int i = 0;
-        for (Map.Entry<BlockPos, PipeNetwork> entry : networkByBlock.entrySet()) {
-            networkByBlockData[i++] = entry.getKey().getX();
-            networkByBlockData[i++] = entry.getKey().getY();
-            networkByBlockData[i++] = entry.getKey().getZ();
-            networkByBlockData[i++] = entry.getValue().id;
-            networkByBlockData[i++] = NbtHelper.encodeDirections(links.get(entry.getKey()));
-        }
-        tag.putIntArray("networkByBlock", networkByBlockData);
-
         // nextNetworkId
         tag.putInt("nextNetworkId", nextNetworkId);
+        indexDirty = false;
         checkStateCoherence();
         return tag;
     }
@@ -405,7 +667,10 @@ public class PipeNetworkManager {
     }
 
     public Set<Direction> getNodeLinks(BlockPos pos) {
-        return new HashSet<>(links.get(pos));
+        ensureShardLoaded(pos);
+        Set<Direction> nodeLinks = EnumSet.noneOf(Direction.class);
+        Collections.addAll(nodeLinks, NbtHelper.decodeDirections(links.get(pos.asLong())));
+        return nodeLinks;
     }
 
     /**
@@ -417,18 +682,17 @@ public class PipeNetworkManager {
         }
 
         customAssert(networkByBlock.keySet().equals(links.keySet()));
-        for (Map.Entry<BlockPos, PipeNetwork> entry : networkByBlock.entrySet()) {
-            customAssert(networks.contains(entry.getValue()));
-            PipeNetworkNode node = entry.getValue().getNode(entry.getKey());
+        for (var entry : Long2ObjectMaps.fastIterable(networkByBlock)) {
+            BlockPos pos = BlockPos.of(entry.getLongKey());
+            customAssert(networks.get(entry.getValue().id) == entry.getValue());
+            customAssert(nodesByShard.get(getShard(pos)).contains(entry.getLongKey()));
+            PipeNetworkNode node = entry.getValue().getNode(pos);
             customAssert(node == null || node.network == entry.getValue());
         }
-        for (Map.Entry<BlockPos, Set<Direction>> entry : links.entrySet()) {
-            customAssert(entry.getValue() != null);
-        }
-        for (PipeNetwork network : networks) {
+        for (PipeNetwork network : networks.values()) {
             for (Map.Entry<BlockPos, PipeNetworkNode> entry : network.getRawNodeMap().entrySet()) {
                 customAssert(entry.getValue() == null || entry.getValue().network == network);
-                customAssert(networkByBlock.get(entry.getKey()) == network);
+                customAssert(networkByBlock.get(entry.getKey().asLong()) == network);
             }
         }
     }
@@ -28,10 +28,14 @@ import aztech.modern_industrialization.api.energy.MIEnergyStorage;
 import aztech.modern_industrialization.pipes.PipeStatsCollector;
 import aztech.modern_industrialization.pipes.api.PipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
-import java.util.*;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import java.util.ArrayList;
+import java.util.List;
 import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.RandomSource;
 
 public class ElectricityNetwork extends PipeNetwork {
     private static final List<MIEnergyStorage> STORAGES_CACHE = new ArrayList<>();
@@ -39,6 +43,12 @@ public class ElectricityNetwork extends PipeNetwork {
     final CableTier tier;
     final PipeStatsCollector stats = new PipeStatsCollector();
 
+    // Reusable buffers for transferForTargets, grown as needed.
+    private final RandomSource random = RandomSource.createNewThreadLocalInstance();
+    private int[] order = new int[0];
+    private long[] simulationResults = new long[0];
+    private final IntComparator bySimulationResult = (a, b) -> Long.compare(simulationResults[a], simulationResults[b]);
+
     public ElectricityNetwork(int id, PipeNetworkData data, CableTier tier) {
         super(id, data == null ? new ElectricityNetworkData() : data);
         this.tier = tier;
@@ -46,7 +56,7 @@ public class ElectricityNetwork extends PipeNetwork {
 
     @Override
     public void tick(ServerLevel world) {
-        // Gather targets
+        // Gather targets, only the ones that can connect to the tier are added
         List<MIEnergyStorage> storages = STORAGES_CACHE;
         long networkAmount = 0;
         int loadedNodeCount = 0;
@@ -57,9 +67,6 @@ public class ElectricityNetwork extends PipeNetwork {
             loadedNodeCount++;
         }
 
-        // Filter targets
-        storages.removeIf(s -> !s.canConnect(tier));
-
         // Do the transfer
         long networkCapacity = loadedNodeCount * tier.getMaxTransfer();
         try (var tx = Transaction.openOuter()) {
@@ -78,8 +85,12 @@ public class ElectricityNetwork extends PipeNetwork {
         // Split energy evenly across the nodes
         for (var entry : iterateTickingNodes()) {
             ElectricityNetworkNode electricityNode = (ElectricityNetworkNode) entry.getNode();
-            electricityNode.eu = networkAmount / loadedNodeCount;
-            networkAmount -= electricityNode.eu;
+            long nodeEu = networkAmount / loadedNodeCount;
+            if (electricityNode.eu != nodeEu) {
+                electricityNode.eu = nodeEu;
+                manager.markNodeDirty(entry.getPos());
+            }
+            networkAmount -= nodeEu;
             --loadedNodeCount;
         }
 
@@ -91,32 +102,35 @@ public class ElectricityNetwork extends PipeNetwork {
      * Perform a transfer operation across a list of targets. Will not mutate the
      * list. Does not check for the network's max transfer rate specifically.
      */
-    private static long transferForTargets(TransferOperation operation, List<MIEnergyStorage> targets, long maxAmount,
+    private long transferForTargets(TransferOperation operation, List<MIEnergyStorage> targets, long maxAmount,
             TransactionContext transaction) {
-        // Build target list
-        List<EnergyTarget> sortableTargets = new ArrayList<>(targets.size());
-        for (var target : targets) {
-            sortableTargets.add(new EnergyTarget(target));
+        int targetCount = targets.size();
+        if (order.length < targetCount) {
+            order = new int[targetCount];
+            simulationResults = new long[targetCount];
         }
         // Shuffle for better transfer on average
-        Collections.shuffle(sortableTargets);
+        for (int i = 0; i < targetCount; ++i) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
         // Simulate the transfer for every target
-        for (EnergyTarget target : sortableTargets) {
+        for (int i = 0; i < targetCount; ++i) {
             try (var nested = transaction.openNested()) {
-                target.simulationResult = operation.transfer(target.target, maxAmount, nested);
+                simulationResults[i] = operation.transfer(targets.get(i), maxAmount, nested);
             }
         }
         // Sort from low to high result
-        sortableTargets.sort(Comparator.comparingLong(t -> t.simulationResult));
+        IntArrays.quickSort(order, 0, targetCount, bySimulationResult);
         // Actually perform the transfer
         long transferredAmount = 0;
-        for (int i = 0; i < sortableTargets.size(); ++i) {
-            EnergyTarget target = sortableTargets.get(i);
-            int remainingTargets = sortableTargets.size() - i;
+        for (int i = 0; i < targetCount; ++i) {
+            int remainingTargets = targetCount - i;
             long remainingAmount = maxAmount - transferredAmount;
             long targetMaxAmount = remainingAmount / remainingTargets;
 
-            transferredAmount += operation.transfer(target.target, targetMaxAmount, transaction);
+            transferredAmount += operation.transfer(targets.get(order[i]), targetMaxAmount, transaction);
         }
         return transferredAmount;
     }
@@ -125,13 +139,4 @@ public class ElectricityNetwork extends PipeNetwork {
     private interface TransferOperation {
         long transfer(MIEnergyStorage transferable, long maxAmount, TransactionContext transaction);
     }
-
-    private static class EnergyTarget {
-        final MIEnergyStorage target;
-        long simulationResult;
-
-        EnergyTarget(MIEnergyStorage target) {
-            this.target = target;
-        }
-    }
 }
@@ -27,19 +27,35 @@ import aztech.modern_industrialization.pipes.PipeStatsCollector;
 import aztech.modern_industrialization.pipes.api.PipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import java.util.*;
 import net.fabricmc.fabric.api.transfer.v1.fluid.FluidVariant;
-import net.fabricmc.fabric.api.transfer.v1.storage.Storage;
 import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 
 public class FluidNetwork extends PipeNetwork {
+    private static final Comparator<FluidTarget> DECREASING_PRIORITY = Comparator.comparingInt(target -> -target.priority);
+    private static final Comparator<FluidTarget> INCREASING_SIMULATION_RESULT = Comparator.comparingLong(target -> target.simulationResult);
+
     final int nodeCapacity;
     final PipeStatsCollector stats = new PipeStatsCollector();
+    private final Random random = new Random();
+
+    /**
+     * The flow plan: the ticking nodes, and their targets grouped by decreasing priority.
+     * It is rebuilt when the ticking nodes or their connections change, so that steady-state ticks don't allocate.
+     */
+    private boolean flowPlanValid = false;
+    private FluidNetworkNode[] planNodes = new FluidNetworkNode[0];
+    private BlockPos[] planPositions = new BlockPos[0];
+    private FluidTarget[] planTargets = new FluidTarget[0];
+    /**
+     * The end (exclusive) of each priority bucket in {@link #planTargets}.
+     */
+    private int[] bucketEnds = new int[0];
 
     public FluidNetwork(int id, PipeNetworkData data, int nodeCapacity) {
         super(id, data == null ? new FluidNetworkData(FluidVariant.blank()) : data);
@@ -47,18 +63,58 @@ public class FluidNetwork extends PipeNetwork {
     }
 
     @Override
-    public void tick(ServerLevel world) {
-        // Gather targets and hopefully set fluid
+    protected void onTickingNodesChanged() {
+        flowPlanValid = false;
+    }
+
+    void invalidateFlowPlan() {
+        flowPlanValid = false;
+    }
+
+    private void rebuildFlowPlan(Collection<PosNode> tickingNodes) {
         List<FluidTarget> targets = new ArrayList<>();
-        long networkAmount = 0;
-        int loadedNodeCount = 0;
-        for (var entry : iterateTickingNodes()) {
+        planNodes = new FluidNetworkNode[tickingNodes.size()];
+        planPositions = new BlockPos[tickingNodes.size()];
+        int i = 0;
+        for (var entry : tickingNodes) {
             FluidNetworkNode fluidNode = (FluidNetworkNode) entry.getNode();
-            fluidNode.gatherTargetsAndPickFluid(world, entry.getPos(), targets);
-            // Amount goes after the gather...() call because the gather...() call cleans
+            planNodes[i] = fluidNode;
+            planPositions[i] = entry.getPos();
+            fluidNode.appendTargets(targets);
+            i++;
+        }
+
+        // Sort by decreasing priority
+        targets.sort(DECREASING_PRIORITY);
+        planTargets = targets.toArray(new FluidTarget[0]);
+
+        IntList ends = new IntArrayList();
+        for (int j = 0; j < planTargets.length; ++j) {
+            if (j == planTargets.length - 1 || planTargets[j].priority != planTargets[j + 1].priority) {
+                ends.add(j + 1);
+            }
+        }
+        bucketEnds = ends.toIntArray();
+
+        flowPlanValid = true;
+    }
+
+    @Override
+    public void tick(ServerLevel world) {
+        Collection<PosNode> tickingNodes = iterateTickingNodes();
+        if (!flowPlanValid) {
+            rebuildFlowPlan(tickingNodes);
+        }
+
+        // Refresh targets and hopefully set fluid
+        long networkAmount = 0;
+        int loadedNodeCount = planNodes.length;
+        for (int i = 0; i < planNodes.length; i++) {
+            FluidNetworkNode fluidNode = planNodes[i];
+            fluidNode.refreshTargetsAndPickFluid(world, planPositions[i]);
+            // Amount goes after the refresh...() call because the refresh...() call cleans
             // invalid amounts.
             networkAmount += fluidNode.amount;
-            loadedNodeCount++;
         }
         long networkCapacity = (long) loadedNodeCount * nodeCapacity;
         FluidVariant fluid = ((FluidNetworkData) data).fluid;
@@ -68,10 +124,10 @@ public class FluidNetwork extends PipeNetwork {
         if (!fluid.isBlank()) {
             try (Transaction transaction = Transaction.openOuter()) {
                 // Extract from targets into the network
-                extracted = transferByPriority(Storage::extract, targets, fluid, networkCapacity - networkAmount, transaction);
+                extracted = transferByPriority(FluidTarget::extract, fluid, networkCapacity - networkAmount, transaction);
                 networkAmount += extracted;
                 // Insert into the targets from the network
-                inserted = transferByPriority(Storage::insert, targets, fluid, networkAmount, transaction);
+                inserted = transferByPriority(FluidTarget::insert, fluid, networkAmount, transaction);
                 networkAmount -= inserted;
 
                 transaction.commit();
@@ -79,79 +135,84 @@ public class FluidNetwork extends PipeNetwork {
 
             // Split fluid evenly across the nodes
             // Rebalance fluid inside the nodes
-            for (var entry : iterateTickingNodes()) {
-                FluidNetworkNode fluidNode = (FluidNetworkNode) entry.getNode();
-                fluidNode.amount = networkAmount / loadedNodeCount;
-                networkAmount -= fluidNode.amount;
+            for (int i = 0; i < planNodes.length; i++) {
+                FluidNetworkNode fluidNode = planNodes[i];
+                long nodeAmount = networkAmount / loadedNodeCount;
+                if (fluidNode.amount != nodeAmount) {
+                    fluidNode.amount = nodeAmount;
+                    manager.markNodeDirty(planPositions[i]);
+                }
+                networkAmount -= nodeAmount;
                 loadedNodeCount--;
             }
         }
 
         stats.addValue(Math.max(extracted, inserted));
 
-        for (var entry : iterateTickingNodes()) {
-            ((FluidNetworkNode) entry.getNode()).afterTick(world, entry.getPos());
+        for (int i = 0; i < planNodes.length; i++) {
+            planNodes[i].afterTick(world, planPositions[i]);
         }
     }
 
     /**
-     * Perform a transfer operation for a priority bucket, starting with higher
+     * Perform a transfer operation for each priority bucket, starting with higher
      * priority targets.
      *
      * @return The amount that was successfully transferred.
      */
-    private static long transferByPriority(TransferOperation operation, List<FluidTarget> targets, FluidVariant fluid, long maxAmount,
-            TransactionContext transaction) {
-        // Sort by decreasing priority
-        targets.sort(Comparator.comparingInt(target -> -target.priority));
+    private long transferByPriority(TransferOperation operation, FluidVariant fluid, long maxAmount, TransactionContext transaction) {
         // Transfer for each bucket
         long transferredAmount = 0;
         int bucketStart = 0;
-        for (int i = 0; i < targets.size(); ++i) {
-            if (i == targets.size() - 1 || targets.get(bucketStart).priority != targets.get(i + 1).priority) {
-                transferredAmount += transferForBucket(operation, targets.subList(bucketStart, i + 1), fluid, maxAmount - transferredAmount,
-                        transaction);
-                bucketStart = i + 1;
-            }
+        for (int bucketEnd : bucketEnds) {
+            transferredAmount += transferForBucket(operation, bucketStart, bucketEnd, fluid, maxAmount - transferredAmount, transaction);
+            bucketStart = bucketEnd;
         }
         return transferredAmount;
     }
 
     /**
-     * Perform a transfer operation for a priority bucket, so {@code bucket} is a
-     * sublist of targets with the same priority each.
+     * Perform a transfer operation for a priority bucket, so the targets from
+     * {@code start} to {@code end} all have the same priority.
      * 
      * @return The amount that was successfully transferred.
      */
-    private static long transferForBucket(TransferOperation operation, List<FluidTarget> bucket, FluidVariant fluid, long maxAmount,
+    private long transferForBucket(TransferOperation operation, int start, int end, FluidVariant fluid, long maxAmount,
             TransactionContext transaction) {
+        FluidTarget[] bucket = planTargets;
         // Shuffle the bucket for better average transfer when simulation returns the
         // same result every time
-        Collections.shuffle(bucket);
+        for (int i = end - 1; i > start; --i) {
+            int j = start + random.nextInt(i - start + 1);
+            FluidTarget tmp = bucket[i];
+            bucket[i] = bucket[j];
+            bucket[j] = tmp;
+        }
         // Simulate the transfer for every target
-        for (FluidTarget target : bucket) {
+        for (int i = start; i < end; ++i) {
+            FluidTarget target = bucket[i];
             try (Transaction nested = transaction.openNested()) {
-                target.simulationResult = operation.transfer(target.storage, fluid, maxAmount, nested);
+                target.simulationResult = operation.transfer(target, fluid, maxAmount, nested);
             }
         }
         // Sort from low result to high result
-        bucket.sort(Comparator.comparingLong(target -> target.simulationResult));
+        Arrays.sort(bucket, start, end, INCREASING_SIMULATION_RESULT);
         // Actually perform the transfer
         long transferredAmount = 0;
-        for (int i = 0; i < bucket.size(); ++i) {
-            FluidTarget target = bucket.get(i);
-            int remainingTargets = bucket.size() - i;
+        for (int i = start; i < end; ++i) {
+            FluidTarget target = bucket[i];
+            int remainingTargets = end - i;
             long remainingAmount = maxAmount - transferredAmount;
             long targetMaxAmount = remainingAmount / remainingTargets;
 
-            transferredAmount += operation.transfer(target.storage, fluid, targetMaxAmount, transaction);
+            transferredAmount += operation.transfer(target, fluid, targetMaxAmount, transaction);
         }
         return transferredAmount;
     }
 
     @FunctionalInterface
     private interface TransferOperation {
-        long transfer(Storage<FluidVariant> storage, FluidVariant fluid, long maxAmount, TransactionContext transaction);
+        long transfer(FluidTarget target, FluidVariant fluid, long maxAmount, TransactionContext transaction);
     }
 
     @Override
@@ -190,6 +251,7 @@ public class FluidNetwork extends PipeNetwork {
     protected void setFluid(FluidVariant fluid) {
         if (((FluidNetworkData) data).fluid.isBlank()) {
             ((FluidNetworkData) data).fluid = fluid;
+            markDataDirty();
         }
     }
 
@@ -198,15 +260,23 @@ public class FluidNetwork extends PipeNetwork {
      */
     protected void clearFluid() {
         // Check that every node is loaded.
+        if (!isFullyLoaded()) {
+            return;
+        }
         for (PipeNetworkNode node : getRawNodeMap().values()) {
             if (node == null) {
                 return;
             }
         }
         // Clear
-        for (PipeNetworkNode node : getRawNodeMap().values()) {
-            ((FluidNetworkNode) node).amount = 0;
+        for (var entry : getRawNodeMap().entrySet()) {
+            FluidNetworkNode node = (FluidNetworkNode) entry.getValue();
+            if (node.amount != 0) {
+                node.amount = 0;
+                manager.markNodeDirty(entry.getKey());
+            }
         }
         ((FluidNetworkData) data).fluid = FluidVariant.blank();
+        markDataDirty();
     }
 }
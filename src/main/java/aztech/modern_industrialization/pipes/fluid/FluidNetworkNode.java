@@ -32,7 +32,6 @@ import aztech.modern_industrialization.pipes.api.PipeNetworkType;
 import aztech.modern_industrialization.pipes.gui.IPipeScreenHandlerHelper;
 import aztech.modern_industrialization.pipes.impl.PipeBlockEntity;
 import aztech.modern_industrialization.pipes.impl.PipeNetworks;
-import aztech.modern_industrialization.util.IoStorage;
 import aztech.modern_industrialization.util.NbtHelper;
 import com.google.common.base.MoreObjects;
 import java.util.*;
@@ -64,29 +63,53 @@ public class FluidNetworkNode extends PipeNetworkNode {
     private FluidVariant cachedFluid = FluidVariant.blank();
 
     /**
-     * Add all valid targets to the target list, and pick the fluid for the network
+     * Add the targets of all connections to the list, for the flow plan of the network.
+     */
+    void appendTargets(List<FluidTarget> targets) {
+        for (FluidConnection connection : connections) {
+            connection.target.priority = connection.priority;
+            connection.target.canInsert = connection.canInsert();
+            connection.target.canExtract = connection.canExtract();
+            targets.add(connection.target);
+        }
+    }
+
+    /**
+     * Refresh the storage of every target, and pick the fluid for the network
      * if no fluid is set.
      */
-    void gatherTargetsAndPickFluid(ServerLevel world, BlockPos pos, List<FluidTarget> targets) {
+    void refreshTargetsAndPickFluid(ServerLevel world, BlockPos pos) {
         FluidNetworkData data = (FluidNetworkData) network.data;
         FluidNetwork network = (FluidNetwork) this.network;
 
         if (amount > network.nodeCapacity) {
             ModernIndustrialization.LOGGER.warn("Fluid amount > nodeCapacity, deleting some fluid!");
             amount = network.nodeCapacity;
+            network.manager.markNodeDirty(pos);
         }
         if (amount > 0 && data.fluid.isBlank()) {
             ModernIndustrialization.LOGGER.warn("Amount > 0 but fluid is blank, deleting some fluid!");
             amount = 0;
+            network.manager.markNodeDirty(pos);
         }
 
-        for (FluidConnection connection : connections) {
+        for (int i = 0; i < connections.size(); i++) {
+            FluidConnection connection = connections.get(i);
             Storage<FluidVariant> storage = getNeighborStorage(world, pos, connection);
             if (data.fluid.isBlank() && connection.canExtract()) {
                 // Try to set fluid, will return null if none could be found.
                 data.fluid = MoreObjects.firstNonNull(StorageUtil.findExtractableResource(storage, null), FluidVariant.blank());
+                if (!data.fluid.isBlank()) {
+                    network.markDataDirty();
+                }
             }
-            targets.add(new FluidTarget(connection.priority, new IoStorage<>(storage, connection.canInsert(), connection.canExtract())));
+            connection.target.storage = storage;
+        }
+    }
+
+    private void invalidateFlowPlan() {
+        if (network != null) {
+            ((FluidNetwork) network).invalidateFlowPlan();
         }
     }
 
@@ -107,7 +130,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
     public void updateConnections(Level world, BlockPos pos) {
         // Remove the connection to the outside world if a connection to another pipe is made.
         var levelNetworks = PipeNetworks.get((ServerLevel) world);
-        connections.removeIf(connection -> {
+        boolean removed = connections.removeIf(connection -> {
             for (var type : PipeNetworkType.getTypes().values()) {
                 var manager = levelNetworks.getOptionalManager(type);
                 if (manager != null && manager.hasLink(pos, connection.direction)) {
@@ -116,6 +139,9 @@ public class FluidNetworkNode extends PipeNetworkNode {
             }
             return false;
         });
+        if (removed) {
+            invalidateFlowPlan();
+        }
     }
 
     @Override
@@ -147,6 +173,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
                     conn.type = BLOCK_OUT;
                 else
                     connections.remove(i);
+                invalidateFlowPlan();
                 return;
             }
         }
@@ -163,6 +190,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
         // Otherwise try to connect
         if (canConnect(world, pos, direction)) {
             connections.add(new FluidConnection(direction, BLOCK_IN, 0));
+            invalidateFlowPlan();
         }
     }
 
@@ -218,6 +246,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
         private PipeEndpointType type;
         private int priority;
         private BlockApiCache<Storage<FluidVariant>, Direction> cache;
+        private final FluidTarget target = new FluidTarget();
 
         private FluidConnection(Direction direction, PipeEndpointType type, int priority) {
             this.direction = direction;
@@ -269,6 +298,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
                     public void setConnectionType(int type) {
                         if (0 <= type && type < 3) {
                             FluidConnection.this.type = decodeConnectionType(type);
+                            invalidateFlowPlan();
                             helper.callMarkDirty();
                             helper.callSync();
                         }
@@ -282,6 +312,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
                     @Override
                     public void setPriority(int channel, int priority) {
                         FluidConnection.this.priority = priority;
+                        invalidateFlowPlan();
                         helper.callMarkDirty();
                     }
 
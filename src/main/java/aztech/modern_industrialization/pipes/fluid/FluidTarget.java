@@ -25,19 +25,26 @@ package aztech.modern_industrialization.pipes.fluid;
 
 import net.fabricmc.fabric.api.transfer.v1.fluid.FluidVariant;
 import net.fabricmc.fabric.api.transfer.v1.storage.Storage;
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
 
 /**
  * A target to be used during a transfer operation.
+ * There is one target per connection, which is reused from one tick to the next:
+ * the storage is refreshed every tick, the other fields only when the flow plan of the network is rebuilt.
  */
 class FluidTarget {
-    final int priority;
-    final Storage<FluidVariant> storage;
+    int priority;
+    boolean canInsert, canExtract;
+    Storage<FluidVariant> storage = Storage.empty();
 
     // A temporary value used to sort fluid targets
     long simulationResult;
 
-    public FluidTarget(int priority, Storage<FluidVariant> storage) {
-        this.priority = priority;
-        this.storage = storage;
+    long insert(FluidVariant fluid, long maxAmount, TransactionContext transaction) {
+        return canInsert ? storage.insert(fluid, maxAmount, transaction) : 0;
+    }
+
+    long extract(FluidVariant fluid, long maxAmount, TransactionContext transaction) {
+        return canExtract ? storage.extract(fluid, maxAmount, transaction) : 0;
     }
 }
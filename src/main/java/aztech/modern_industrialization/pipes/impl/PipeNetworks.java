@@ -23,30 +23,62 @@
  */
 package aztech.modern_industrialization.pipes.impl;
 
+import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.pipes.api.PipeNetworkManager;
 import aztech.modern_industrialization.pipes.api.PipeNetworkType;
 import aztech.modern_industrialization.util.MISavedData;
 import aztech.modern_industrialization.util.WorldHelper;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMaps;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.storage.LevelResource;
 import org.jetbrains.annotations.Nullable;
 
 public class PipeNetworks extends MISavedData {
     private static final String NAME = "modern_industrialization_pipe_networks";
+    private static final String GENERATION_KEY = "saveGeneration";
+    private static final String PENDING_SUFFIX = ".pending";
     private final Map<PipeNetworkType, PipeNetworkManager> managers;
     private final Map<Long, List<Runnable>> loadPipesByChunk = new HashMap<>();
+    /**
+     * Folder containing the shard files, one file per shard for all the pipe types.
+     */
+    @Nullable
+    private Path shardFolder = null;
+    /**
+     * Generation of the last saved index. Shards written by a save are only valid once an index with the same generation is on disk.
+     */
+    private long saveGeneration = 0;
 
     public PipeNetworks(Map<PipeNetworkType, PipeNetworkManager> managers) {
         this.managers = managers;
+        for (PipeNetworkManager manager : managers.values()) {
+            manager.setShardLoader(this::loadShard);
+        }
     }
 
     public PipeNetworkManager getManager(PipeNetworkType type) {
-        return managers.computeIfAbsent(type, PipeNetworkManager::new);
+        return managers.computeIfAbsent(type, t -> {
+            PipeNetworkManager manager = new PipeNetworkManager(t);
+            manager.setShardLoader(this::loadShard);
+            return manager;
+        });
     }
 
     @Nullable
@@ -54,11 +86,238 @@ public class PipeNetworks extends MISavedData {
         return managers.get(type);
     }
 
+    @Override
+    public boolean isDirty() {
+        if (super.isDirty()) {
+            return true;
+        }
+        for (PipeNetworkManager manager : managers.values()) {
+            if (manager.isIndexDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shards are saved in three steps, so that the index and the shards on disk always come from the same save:
+     * <ol>
+     * <li>The dirty shards are written to pending files, tagged with the generation of the new save.</li>
+     * <li>The index is written with that generation, which commits the pending shards.</li>
+     * <li>The pending shards replace the shard files.</li>
+     * </ol>
+     * If the game stops before the index is written, the pending shards are discarded by {@link #resolvePendingShards} on the next load,
+     * and the previous index and shards are used. If it stops after, the pending shards replace the shard files on the next load.
+     */
+    @Override
+    public void save(File file) {
+        long generation = saveGeneration + 1;
+        Long2BooleanMap pendingShards = writePendingShards(generation);
+        if (pendingShards == null) {
+            // Writing the index now could drop networks that the old shard files still reference, so wait for the next save.
+            setDirty();
+        } else if (!pendingShards.isEmpty()) {
+            // The index must be rewritten to commit the shards.
+            setDirty();
+        }
+
+        if (pendingShards != null && isDirty()) {
+            saveGeneration = generation;
+            if (trySave(file)) {
+                commitPendingShards(pendingShards);
+            } else {
+                saveGeneration = generation - 1;
+                discardPendingShards(pendingShards);
+            }
+        }
+
+        // This is called every time the level is saved, even if the index is not dirty.
+        for (var entry : managers.entrySet()) {
+            entry.getValue().onLevelSaved();
+            int dirtiedChunks = entry.getValue().getChunksDirtiedLastSave();
+            if (dirtiedChunks > 0) {
+                ModernIndustrialization.LOGGER.debug("{} chunks were modified by pipes of type {} since the last save.", dirtiedChunks,
+                        entry.getKey().getIdentifier());
+            }
+        }
+    }
+
+    private Path getShardFile(long shard) {
+        return shardFolder.resolve("r.%d.%d.dat".formatted(ChunkPos.getX(shard), ChunkPos.getZ(shard)));
+    }
+
+    private static Path getPendingFile(Path shardFile) {
+        return shardFile.resolveSibling(shardFile.getFileName() + PENDING_SUFFIX);
+    }
+
+    /**
+     * Load a shard for all the managers that did not load it yet.
+     */
+    private void loadShard(long shard) {
+        CompoundTag tag = null;
+        if (shardFolder != null) {
+            File file = getShardFile(shard).toFile();
+            if (file.exists()) {
+                try {
+                    tag = NbtIo.readCompressed(file);
+                } catch (IOException ex) {
+                    ModernIndustrialization.LOGGER.error("Could not load pipe network shard {}", file, ex);
+                }
+            }
+        }
+
+        for (Map.Entry<PipeNetworkType, PipeNetworkManager> entry : managers.entrySet()) {
+            PipeNetworkManager manager = entry.getValue();
+            if (!manager.isShardLoaded(shard)) {
+                String tagKey = entry.getKey().getIdentifier().toString();
+                manager.loadShard(shard, tag != null && tag.contains(tagKey) ? tag.getCompound(tagKey) : null);
+            }
+        }
+    }
+
+    /**
+     * Write the shards that were modified since the last save to pending files.
+     *
+     * @return The written shards, mapped to whether they are empty, or null if any shard could not be written.
+     *         In that case, nothing is written and the shards stay dirty.
+     */
+    @Nullable
+    private Long2BooleanMap writePendingShards(long generation) {
+        Long2BooleanMap pendingShards = new Long2BooleanOpenHashMap();
+        if (shardFolder == null) {
+            return pendingShards;
+        }
+
+        LongSet dirtyShards = new LongOpenHashSet();
+        for (PipeNetworkManager manager : managers.values()) {
+            dirtyShards.addAll(manager.getDirtyShards());
+        }
+        if (dirtyShards.isEmpty()) {
+            return pendingShards;
+        }
+
+        try {
+            Files.createDirectories(shardFolder);
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.error("Could not create pipe network folder {}", shardFolder, ex);
+            return null;
+        }
+
+        for (long shard : dirtyShards) {
+            // The file contains all the pipe types, so make sure that it is fully loaded before overwriting it.
+            loadShard(shard);
+
+            CompoundTag tag = new CompoundTag();
+            for (Map.Entry<PipeNetworkType, PipeNetworkManager> entry : managers.entrySet()) {
+                CompoundTag shardTag = entry.getValue().saveShard(shard);
+                if (shardTag != null) {
+                    tag.put(entry.getKey().getIdentifier().toString(), shardTag);
+                }
+            }
+
+            boolean empty = tag.isEmpty();
+            tag.putLong(GENERATION_KEY, generation);
+
+            File file = getPendingFile(getShardFile(shard)).toFile();
+            try {
+                writeSafely(tag, file);
+                pendingShards.put(shard, empty);
+            } catch (IOException ex) {
+                ModernIndustrialization.LOGGER.error("Could not save pipe network shard {}", file, ex);
+                for (long dirtyShard : dirtyShards) {
+                    markShardDirty(dirtyShard);
+                }
+                discardPendingShards(pendingShards);
+                return null;
+            }
+        }
+        return pendingShards;
+    }
+
+    /**
+     * Replace the shard files by the pending shards, once the index that commits them is saved.
+     */
+    private void commitPendingShards(Long2BooleanMap pendingShards) {
+        for (var entry : Long2BooleanMaps.fastIterable(pendingShards)) {
+            Path shardFile = getShardFile(entry.getLongKey());
+            try {
+                commitPendingShard(shardFile, entry.getBooleanValue());
+            } catch (IOException ex) {
+                // The pending file is still there, and will be committed on the next load.
+                ModernIndustrialization.LOGGER.error("Could not replace pipe network shard {}", shardFile, ex);
+            }
+        }
+    }
+
+    private static void commitPendingShard(Path shardFile, boolean empty) throws IOException {
+        Path pendingFile = getPendingFile(shardFile);
+        if (empty) {
+            Files.deleteIfExists(shardFile);
+            Files.deleteIfExists(pendingFile);
+        } else {
+            Files.move(pendingFile, shardFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Delete the pending shards of a save whose index could not be written, and save them again next time.
+     */
+    private void discardPendingShards(Long2BooleanMap pendingShards) {
+        for (long shard : pendingShards.keySet()) {
+            markShardDirty(shard);
+            try {
+                Files.deleteIfExists(getPendingFile(getShardFile(shard)));
+            } catch (IOException ex) {
+                ModernIndustrialization.LOGGER.error("Could not delete pending pipe network shard of {}", getShardFile(shard), ex);
+            }
+        }
+    }
+
+    private void markShardDirty(long shard) {
+        for (PipeNetworkManager manager : managers.values()) {
+            manager.markShardDirty(shard);
+        }
+    }
+
+    /**
+     * Finish or roll back a save that was interrupted: pending shards committed by the loaded index replace the shard files,
+     * and the others are deleted.
+     */
+    private void resolvePendingShards() {
+        if (!Files.isDirectory(shardFolder)) {
+            return;
+        }
+
+        List<Path> pendingFiles;
+        try (var files = Files.list(shardFolder)) {
+            pendingFiles = files.filter(path -> path.getFileName().toString().endsWith(PENDING_SUFFIX)).toList();
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.error("Could not list pipe network shards in {}", shardFolder, ex);
+            return;
+        }
+
+        for (Path pendingFile : pendingFiles) {
+            String pendingName = pendingFile.getFileName().toString();
+            Path shardFile = pendingFile.resolveSibling(pendingName.substring(0, pendingName.length() - PENDING_SUFFIX.length()));
+            try {
+                CompoundTag tag = NbtIo.readCompressed(pendingFile.toFile());
+                if (tag.getLong(GENERATION_KEY) <= saveGeneration) {
+                    commitPendingShard(shardFile, tag.size() == 1);
+                } else {
+                    Files.delete(pendingFile);
+                }
+            } catch (IOException ex) {
+                ModernIndustrialization.LOGGER.error("Could not resolve pending pipe network shard {}", pendingFile, ex);
+            }
+        }
+    }
+
     @Override
     public CompoundTag save(CompoundTag nbt) {
         for (Map.Entry<PipeNetworkType, PipeNetworkManager> entry : managers.entrySet()) {
             nbt.put(entry.getKey().getIdentifier().toString(), entry.getValue().toTag(new CompoundTag()));
         }
+        nbt.putLong(GENERATION_KEY, saveGeneration);
         return nbt;
     }
 
@@ -72,12 +331,18 @@ public class PipeNetworks extends MISavedData {
             }
             managers.put(entry.getValue(), manager);
         }
-        return new PipeNetworks(managers);
+        var networks = new PipeNetworks(managers);
+        networks.saveGeneration = nbt.getLong(GENERATION_KEY);
+        return networks;
     }
 
     public static PipeNetworks get(ServerLevel world) {
         PipeNetworks networks = world.getDataStorage().computeIfAbsent(PipeNetworks::readNbt, () -> new PipeNetworks(new HashMap<>()), NAME);
-        networks.setDirty();
+        if (networks.shardFolder == null) {
+            Path worldFolder = world.getServer().getWorldPath(LevelResource.ROOT);
+            networks.shardFolder = DimensionType.getStorageFolder(world.dimension(), worldFolder).resolve("data").resolve(NAME).normalize();
+            networks.resolvePendingShards();
+        }
         return networks;
     }
 
@@ -23,15 +23,20 @@
  */
 package aztech.modern_industrialization.pipes.item;
 
+import aztech.modern_industrialization.inventory.ConfigurableItemStack;
+import aztech.modern_industrialization.inventory.MIItemStorage;
 import aztech.modern_industrialization.inventory.WhitelistedItemStorage;
 import aztech.modern_industrialization.pipes.api.PipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
 import aztech.modern_industrialization.util.StorageUtil2;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMaps;
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 import net.fabricmc.fabric.api.lookup.v1.block.BlockApiCache;
 import net.fabricmc.fabric.api.transfer.v1.item.ItemStorage;
 import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
@@ -56,6 +61,12 @@ public class ItemNetwork extends PipeNetwork {
 
     int inactiveTicks = 0;
     long lastMovedItems = 0;
+    /**
+     * Tick of the transfer period at which this network transfers, assigned by {@link ItemNetworkScheduler}.
+     */
+    private int phase = -1;
+    // Scratch map for moveFromMIStorage, keeps the order in which the resources were found.
+    private final Object2LongLinkedOpenHashMap<ItemVariant> extractableAmounts = new Object2LongLinkedOpenHashMap<>();
 
     public ItemNetwork(int id, PipeNetworkData data) {
         super(id, data == null ? new ItemNetworkData() : data);
@@ -63,12 +74,19 @@ public class ItemNetwork extends PipeNetwork {
 
     @Override
     public void tick(ServerLevel world) {
-        // Only tick once
-        if (inactiveTicks == 0) {
+        long tick = world.getServer().getTickCount();
+        int networkWork = iterateTickingNodes().size();
+        if (phase < 0) {
+            phase = ItemNetworkScheduler.assignPhase(id, networkWork, tick);
+        }
+
+        // Only transfer once per period, at the phase given by the scheduler (which may move it to a less busy phase afterwards)
+        int tickPhase = (int) (tick % TICK_RATE);
+        if (tickPhase == phase) {
             doNetworkTransfer(world);
-            inactiveTicks = TICK_RATE;
+            phase = ItemNetworkScheduler.recordWork(phase, networkWork, tick);
         }
-        --inactiveTicks;
+        inactiveTicks = Math.floorMod(phase - tickPhase - 1, TICK_RATE);
     }
 
     private void doNetworkTransfer(ServerLevel world) {
@@ -105,8 +123,13 @@ public class ItemNetwork extends PipeNetwork {
                 }
 
                 try {
-                    lastMovedItems += StorageUtil.move(target.storage, insertStorage, target.connection::canStackMoveThrough,
-                            target.connection.getMoves(), tx);
+                    if (target.storage instanceof MIItemStorage miStorage) {
+                        lastMovedItems += moveFromMIStorage(miStorage, insertStorage, target.connection::canStackMoveThrough,
+                                target.connection.getMoves(), tx);
+                    } else {
+                        lastMovedItems += StorageUtil.move(target.storage, insertStorage, target.connection::canStackMoveThrough,
+                                target.connection.getMoves(), tx);
+                    }
                 } catch (Exception exception) {
                     var crashReport = CrashReport.forThrowable(exception, "Moving items in a pipe network");
                     crashReport.addCategory("Block being extracted from:")
@@ -120,6 +143,50 @@ public class ItemNetwork extends PipeNetwork {
         }
     }
 
+    /**
+     * Bulk version of {@link StorageUtil#move} for MI storages. The amount of each resource that pipes can extract
+     * is known after a single scan of the slots, so every resource is inserted and then extracted once,
+     * all in one nested transaction. {@link StorageUtil#move} instead opens two nested transactions for every slot.
+     */
+    private long moveFromMIStorage(MIItemStorage source, Storage<ItemVariant> to, Predicate<ItemVariant> filter, long maxAmount,
+            TransactionContext transaction) {
+        extractableAmounts.clear();
+        for (StorageView<ItemVariant> view : source) {
+            if (view.getAmount() > 0 && view instanceof ConfigurableItemStack stack && stack.canPipesExtract() && filter.test(stack.getResource())) {
+                extractableAmounts.addTo(stack.getResource(), stack.getAmount());
+            }
+        }
+        if (extractableAmounts.isEmpty()) {
+            return 0;
+        }
+
+        long totalMoved = 0;
+        boolean consistent = true;
+        try (Transaction transferTransaction = Transaction.openNested(transaction)) {
+            for (var entry : Object2LongMaps.fastIterable(extractableAmounts)) {
+                ItemVariant resource = entry.getKey();
+                long accepted = to.insert(resource, Math.min(entry.getLongValue(), maxAmount - totalMoved), transferTransaction);
+                if (accepted > 0) {
+                    if (source.extract(resource, accepted, transferTransaction) != accepted) {
+                        consistent = false;
+                        break;
+                    }
+                    totalMoved += accepted;
+                }
+                if (totalMoved == maxAmount) {
+                    break;
+                }
+            }
+
+            if (consistent) {
+                transferTransaction.commit();
+            }
+        }
+
+        // Should never happen, but if the storage didn't behave as expected, the generic path can deal with it.
+        return consistent ? totalMoved : StorageUtil.move(source, to, filter, maxAmount, transaction);
+    }
+
     private static class ExtractionTarget {
         private final ItemNetworkNode.ItemConnection connection;
         private final Storage<ItemVariant> storage;
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes.item;
+
+import java.util.Arrays;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+
+/**
+ * Spreads the transfers of all item networks over the {@link ItemNetwork#TICK_RATE} ticks of a transfer period.
+ *
+ * <p>
+ * Each network transfers once per period, at a fixed phase. New networks get the phase with the least work,
+ * where the work of a network is its number of ticking nodes. The work of each phase is measured again every period,
+ * so that networks that were removed or changed size are eventually forgotten.
+ *
+ * <p>
+ * Each tick also has a budget: the average work per phase, plus {@link #BUDGET_SLACK_PERCENT}. A network that transfers during
+ * a tick that is already over budget still transfers, but moves to the phase with the least work if that phase has room for it.
+ * The move only ever shortens the wait until the next transfer, so the throughput of the network is not reduced.
+ */
+public final class ItemNetworkScheduler {
+    private ItemNetworkScheduler() {
+    }
+
+    /**
+     * How much the work of a tick may exceed the average work per phase before networks are moved away from it.
+     */
+    private static final int BUDGET_SLACK_PERCENT = 25;
+
+    private static final int[] work = new int[ItemNetwork.TICK_RATE];
+    private static long lastTick = -1;
+
+    /**
+     * Pick the phase of a new network. Ties are broken using the network id, so that networks created together don't all
+     * start on the same phase when there is no work yet.
+     */
+    static int assignPhase(int networkId, int networkWork, long tick) {
+        advanceTo(tick);
+
+        int best = leastLoadedPhase(Math.floorMod(networkId, work.length));
+
+        // Reserve the work right away, for the other networks created during this period.
+        // If the phase is the current tick, the network transfers right away and records its work through recordWork instead.
+        if (best != (int) (tick % work.length)) {
+            work[best] += networkWork;
+        }
+        return best;
+    }
+
+    /**
+     * Record the work done by a network that transfers during this tick, and return the phase of its next transfer.
+     * If this tick is over budget, the network is moved to the phase with the least work, as long as it fits in the budget there.
+     * The first network of a tick is never moved, so that a network larger than the budget doesn't keep moving around.
+     */
+    static int recordWork(int phase, int networkWork, long tick) {
+        advanceTo(tick);
+
+        if (work[phase] > 0 && work[phase] + networkWork > getBudget(networkWork)) {
+            int best = leastLoadedPhase(phase + 1);
+            if (best != phase && work[best] + networkWork <= getBudget(networkWork)) {
+                // Reserve the work at the new phase. Its transfer comes less than a period from now, so no transfer is skipped.
+                work[best] += networkWork;
+                return best;
+            }
+        }
+
+        work[phase] += networkWork;
+        return phase;
+    }
+
+    /**
+     * Budget of a single tick: the average work per phase over the last period, including the work of the given network, plus the slack.
+     */
+    private static int getBudget(int networkWork) {
+        long total = networkWork;
+        for (int phaseWork : work) {
+            total += phaseWork;
+        }
+        return (int) Math.max(1, (total * (100 + BUDGET_SLACK_PERCENT) + 100L * work.length - 1) / (100L * work.length));
+    }
+
+    /**
+     * Phase with the least work. Ties are broken in favor of the phases that come first starting from {@code preferred}.
+     */
+    private static int leastLoadedPhase(int preferred) {
+        preferred = Math.floorMod(preferred, work.length);
+        int best = preferred;
+        for (int i = 1; i < work.length; ++i) {
+            int phase = (preferred + i) % work.length;
+            if (work[phase] < work[best]) {
+                best = phase;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Work scheduled at each phase of the transfer period, for debugging purposes. The phase of a tick is
+     * {@code tick % TICK_RATE}.
+     */
+    public static int[] getScheduledWork() {
+        return work.clone();
+    }
+
+    /**
+     * Clear the work of the phases that start between the last tick and the given tick, since they are about to be measured again.
+     */
+    private static void advanceTo(long tick) {
+        if (tick == lastTick) {
+            return;
+        }
+        if (tick < lastTick || tick - lastTick >= work.length) {
+            Arrays.fill(work, 0);
+        } else {
+            for (long t = lastTick + 1; t <= tick; ++t) {
+                work[(int) (t % work.length)] = 0;
+            }
+        }
+        lastTick = tick;
+    }
+
+    static {
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            Arrays.fill(work, 0);
+            lastTick = -1;
+        });
+    }
+}
@@ -23,20 +23,108 @@
  */
 package aztech.modern_industrialization.resource;
 
+import aztech.modern_industrialization.ModernIndustrialization;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 import net.minecraft.SharedConstants;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.PackType;
 import net.minecraft.server.packs.resources.IoSupplier;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * The pack of runtime generated resources.
+ *
+ * <p>
+ * The folder is walked once when the pack is created, and lookups and listings are answered from that index without touching the file system.
+ */
 public class GeneratedPathPackResources extends FastPathPackResources {
     private final PackType type;
+    /**
+     * Namespace -> resource path -> file, sorted by resource path for prefix listing.
+     */
+    private final Map<String, TreeMap<String, Path>> index = new HashMap<>();
 
     public GeneratedPathPackResources(Path root, PackType type) {
         super("mi_generated_pack", root, true);
         this.type = type;
+        buildIndex(root.resolve(type.getDirectory()));
+    }
+
+    private void buildIndex(Path typeRoot) {
+        if (!Files.isDirectory(typeRoot)) {
+            return;
+        }
+
+        try (Stream<Path> namespaces = Files.list(typeRoot)) {
+            for (Path namespaceFolder : (Iterable<Path>) namespaces::iterator) {
+                String namespace = namespaceFolder.getFileName().toString();
+                if (!Files.isDirectory(namespaceFolder) || !ResourceLocation.isValidNamespace(namespace)) {
+                    continue;
+                }
+
+                TreeMap<String, Path> files = new TreeMap<>();
+                try (Stream<Path> walk = Files.walk(namespaceFolder)) {
+                    walk.filter(Files::isRegularFile).forEach(file -> {
+                        var path = new StringBuilder();
+                        for (Path element : namespaceFolder.relativize(file)) {
+                            if (!path.isEmpty()) {
+                                path.append('/');
+                            }
+                            path.append(element);
+                        }
+                        if (ResourceLocation.isValidPath(path.toString())) {
+                            files.put(path.toString(), file);
+                        }
+                    });
+                }
+                if (!files.isEmpty()) {
+                    index.put(namespace, files);
+                }
+            }
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.error("Failed to index generated resources in " + typeRoot, ex);
+        }
+    }
+
+    @Nullable
+    @Override
+    public IoSupplier<InputStream> getResource(PackType packType, ResourceLocation location) {
+        if (packType != type) {
+            return null;
+        }
+        var files = index.get(location.getNamespace());
+        Path file = files == null ? null : files.get(location.getPath());
+        return file == null ? null : IoSupplier.create(file);
+    }
+
+    @Override
+    public void listResources(PackType packType, String namespace, String path, ResourceOutput resourceOutput) {
+        if (packType != type) {
+            return;
+        }
+        var files = index.get(namespace);
+        if (files == null) {
+            return;
+        }
+        // '0' is the character right after '/', so this range contains exactly the paths under the folder
+        var matching = path.isEmpty() ? files : files.subMap(path + "/", path + "0");
+        for (var entry : matching.entrySet()) {
+            resourceOutput.accept(new ResourceLocation(namespace, entry.getKey()), IoSupplier.create(entry.getValue()));
+        }
+    }
+
+    @Override
+    public Set<String> getNamespaces(PackType packType) {
+        return packType == type ? index.keySet() : Set.of();
     }
 
     @Nullable
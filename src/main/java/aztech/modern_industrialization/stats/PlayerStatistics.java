@@ -27,15 +27,23 @@ import aztech.modern_industrialization.compat.ftbquests.FTBQuestsFacade;
 import aztech.modern_industrialization.compat.ftbteams.FTBTeamsFacade;
 import aztech.modern_industrialization.proxy.CommonProxy;
 import com.google.common.primitives.Ints;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Reference2LongMap;
 import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import net.minecraft.core.Registry;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.stats.Stats;
@@ -58,6 +66,13 @@ public class PlayerStatistics {
     // Items produced while the player was offline... this is used to award vanilla stats when the player comes back online.
     private final Reference2LongMap<Item> pendingCraftedStats = new Reference2LongOpenHashMap<>();
 
+    // Amounts added during the current tick, applied once at the end of the tick by flushPending.
+    private final Reference2LongOpenHashMap<Item> tickUsedItems = new Reference2LongOpenHashMap<>(),
+            tickProducedItems = new Reference2LongOpenHashMap<>();
+    private final Reference2LongOpenHashMap<Fluid> tickUsedFluids = new Reference2LongOpenHashMap<>(),
+            tickProducedFluids = new Reference2LongOpenHashMap<>();
+    private boolean hasTickAmounts = false;
+
     PlayerStatistics(PlayerStatisticsData data, UUID uuid) {
         this.data = data;
         this.uuid = uuid;
@@ -72,6 +87,59 @@ public class PlayerStatistics {
         pendingReadNbt(pendingCraftedStats, nbt.getCompound("pendingCraftedStats"));
     }
 
+    @Nullable
+    UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * Read the format of the per-player files, see {@link #toCompactTag}.
+     */
+    void readCompactTag(CompoundTag nbt) {
+        var items = readPalette(BuiltInRegistries.ITEM, Items.AIR, nbt.getList("items", Tag.TAG_STRING));
+        var fluids = readPalette(BuiltInRegistries.FLUID, Fluids.EMPTY, nbt.getList("fluids", Tag.TAG_STRING));
+        unpackValues(items, Items.AIR, usedItems, nbt.getLongArray("usedItems"));
+        unpackValues(items, Items.AIR, producedItems, nbt.getLongArray("producedItems"));
+        unpackValues(fluids, Fluids.EMPTY, usedFluids, nbt.getLongArray("usedFluids"));
+        unpackValues(fluids, Fluids.EMPTY, producedFluids, nbt.getLongArray("producedFluids"));
+
+        long[] pending = nbt.getLongArray("pendingCraftedStats");
+        for (int offset = 0; offset + 2 <= pending.length; offset += 2) {
+            int index = (int) pending[offset];
+            if (index >= 0 && index < items.size() && items.get(index) != Items.AIR) {
+                pendingCraftedStats.put(items.get(index), pending[offset + 1]);
+            }
+        }
+    }
+
+    /**
+     * Write the statistics with a palette of registry ids per registry,
+     * and each value packed in a long array as the palette index followed by {@link StatisticValue#pack}.
+     */
+    CompoundTag toCompactTag() {
+        var items = new Palette<>(BuiltInRegistries.ITEM);
+        var fluids = new Palette<>(BuiltInRegistries.FLUID);
+
+        CompoundTag nbt = new CompoundTag();
+        nbt.put("usedItems", packValues(items, usedItems));
+        nbt.put("producedItems", packValues(items, producedItems));
+        nbt.put("usedFluids", packValues(fluids, usedFluids));
+        nbt.put("producedFluids", packValues(fluids, producedFluids));
+
+        long[] pending = new long[2 * pendingCraftedStats.size()];
+        int offset = 0;
+        for (var entry : pendingCraftedStats.reference2LongEntrySet()) {
+            pending[offset] = items.indexOf(entry.getKey());
+            pending[offset + 1] = entry.getLongValue();
+            offset += 2;
+        }
+        nbt.putLongArray("pendingCraftedStats", pending);
+
+        nbt.put("items", items.ids);
+        nbt.put("fluids", fluids.ids);
+        return nbt;
+    }
+
     public CompoundTag toTag() {
         CompoundTag nbt = new CompoundTag();
         nbt.put("usedItems", toNbt(BuiltInRegistries.ITEM, usedItems));
@@ -83,41 +151,95 @@ public class PlayerStatistics {
     }
 
     public void addUsedItems(ItemLike what, long amount) {
-        usedItems.computeIfAbsent(what.asItem(), i -> new StatisticValue()).add(amount);
+        if (markTickAmounts()) {
+            tickUsedItems.addTo(what.asItem(), amount);
+        }
     }
 
     public void addProducedItems(ItemLike what, long amount) {
-        var item = what.asItem();
-        producedItems.computeIfAbsent(item, i -> new StatisticValue()).add(amount);
+        if (markTickAmounts()) {
+            tickProducedItems.addTo(what.asItem(), amount);
+        }
+    }
 
-        if (uuid != null) {
-            FTBQuestsFacade.INSTANCE.addCompleted(uuid, item, amount);
+    public void addUsedFluids(Fluid what, long amount) {
+        if (markTickAmounts()) {
+            tickUsedFluids.addTo(what, amount);
+        }
+    }
 
-            awardStat(what, amount);
+    public void addProducedFluids(Fluid what, long amount) {
+        if (markTickAmounts()) {
+            tickProducedFluids.addTo(what, amount);
+        }
+    }
 
-            for (var otherTeamMember : FTBTeamsFacade.INSTANCE.getOtherPlayersInTeam(uuid)) {
-                data.get(otherTeamMember).awardStat(what, amount);
-            }
+    /**
+     * Return false if the amount should be dropped, otherwise make sure that this is flushed at the end of the tick.
+     */
+    private boolean markTickAmounts() {
+        if (data == null) {
+            // Nobody reads the dummy statistics
+            return false;
+        }
+        if (!hasTickAmounts) {
+            hasTickAmounts = true;
+            data.scheduleFlush(this);
         }
+        return true;
     }
 
-    public void addUsedFluids(Fluid what, long amount) {
-        usedFluids.computeIfAbsent(what, i -> new StatisticValue()).add(amount);
+    /**
+     * Apply the amounts added during the current tick: rates, quests, and vanilla stats for the player and their team.
+     */
+    void flushPending() {
+        hasTickAmounts = false;
+        data.markDirty(this);
+
+        flushValues(usedItems, tickUsedItems);
+        flushValues(usedFluids, tickUsedFluids);
+        flushValues(producedFluids, tickProducedFluids);
+
+        if (!tickProducedItems.isEmpty()) {
+            flushValues(producedItems, tickProducedItems);
+
+            if (uuid != null) {
+                for (var entry : tickProducedItems.reference2LongEntrySet()) {
+                    FTBQuestsFacade.INSTANCE.addCompleted(uuid, entry.getKey(), entry.getLongValue());
+                }
+
+                awardStats(tickProducedItems);
+
+                for (var otherTeamMember : FTBTeamsFacade.INSTANCE.getOtherPlayersInTeam(uuid)) {
+                    data.get(otherTeamMember).awardStats(tickProducedItems);
+                }
+            }
+
+            tickProducedItems.clear();
+        }
     }
 
-    public void addProducedFluids(Fluid what, long amount) {
-        producedFluids.computeIfAbsent(what, i -> new StatisticValue()).add(amount);
+    private static <T> void flushValues(Map<T, StatisticValue> values, Reference2LongOpenHashMap<T> tickAmounts) {
+        if (!tickAmounts.isEmpty()) {
+            for (var entry : tickAmounts.reference2LongEntrySet()) {
+                values.computeIfAbsent(entry.getKey(), i -> new StatisticValue()).add(entry.getLongValue());
+            }
+            tickAmounts.clear();
+        }
     }
 
-    private void awardStat(ItemLike what, long amount) {
+    private void awardStats(Reference2LongMap<Item> amounts) {
         Objects.requireNonNull(uuid);
 
         var player = CommonProxy.getCurrentServer().getPlayerList().getPlayer(uuid);
 
-        if (player != null) {
-            player.awardStat(Stats.ITEM_CRAFTED.get(what.asItem()), Ints.saturatedCast(amount));
-        } else {
-            pendingCraftedStats.mergeLong(what.asItem(), amount, Long::sum);
+        for (var entry : amounts.reference2LongEntrySet()) {
+            if (player != null) {
+                player.awardStat(Stats.ITEM_CRAFTED.get(entry.getKey()), Ints.saturatedCast(entry.getLongValue()));
+            } else {
+                pendingCraftedStats.mergeLong(entry.getKey(), entry.getLongValue(), Long::sum);
+                data.markDirty(this);
+            }
         }
     }
 
@@ -128,6 +250,7 @@ public class PlayerStatistics {
             }
 
             pendingCraftedStats.clear();
+            data.markDirty(this);
         }
     }
 
@@ -151,6 +274,59 @@ public class PlayerStatistics {
         return tag;
     }
 
+    private static <T> List<T> readPalette(Registry<T> registry, T empty, ListTag ids) {
+        List<T> palette = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); ++i) {
+            var id = ResourceLocation.tryParse(ids.getString(i));
+            palette.add(id == null ? empty : Objects.requireNonNullElse(registry.get(id), empty));
+        }
+        return palette;
+    }
+
+    private static <T> void unpackValues(List<T> palette, T empty, Map<T, StatisticValue> map, long[] packed) {
+        int entrySize = 1 + StatisticValue.PACKED_SIZE;
+        for (int offset = 0; offset + entrySize <= packed.length; offset += entrySize) {
+            int index = (int) packed[offset];
+            // Entries of removed items or fluids are dropped
+            if (index >= 0 && index < palette.size() && palette.get(index) != empty) {
+                map.put(palette.get(index), new StatisticValue(packed, offset + 1));
+            }
+        }
+    }
+
+    private static <T> LongArrayTag packValues(Palette<T> palette, Map<T, StatisticValue> map) {
+        int entrySize = 1 + StatisticValue.PACKED_SIZE;
+        long[] packed = new long[entrySize * map.size()];
+        int offset = 0;
+        for (var entry : map.entrySet()) {
+            packed[offset] = palette.indexOf(entry.getKey());
+            entry.getValue().pack(packed, offset + 1);
+            offset += entrySize;
+        }
+        return new LongArrayTag(packed);
+    }
+
+    private static class Palette<T> {
+        private final Registry<T> registry;
+        private final Reference2IntMap<T> indices = new Reference2IntOpenHashMap<>();
+        private final ListTag ids = new ListTag();
+
+        private Palette(Registry<T> registry) {
+            this.registry = registry;
+            this.indices.defaultReturnValue(-1);
+        }
+
+        private int indexOf(T value) {
+            int index = indices.getInt(value);
+            if (index == -1) {
+                index = ids.size();
+                ids.add(StringTag.valueOf(registry.getKey(value).toString()));
+                indices.put(value, index);
+            }
+            return index;
+        }
+    }
+
     private static void pendingReadNbt(Reference2LongMap<Item> map, CompoundTag tag) {
         for (var key : tag.getAllKeys()) {
             try {
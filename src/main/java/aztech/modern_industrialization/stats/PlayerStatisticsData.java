@@ -23,25 +23,55 @@
  */
 package aztech.modern_industrialization.stats;
 
+import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.util.MISavedData;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.storage.LevelResource;
 
+/**
+ * Statistics of all players. Each player is stored in its own file in the {@code modern_industrialization_player_stats} data folder,
+ * which is only read when the statistics of that player are first needed, and only rewritten when they changed.
+ */
 public class PlayerStatisticsData extends MISavedData {
+    /**
+     * Loaded statistics, by player.
+     */
     private final Map<UUID, PlayerStatistics> stats = new HashMap<>();
-    private final Function<UUID, PlayerStatistics> statsFactory = uuid -> new PlayerStatistics(this, uuid);
+    private final Function<UUID, PlayerStatistics> statsLoader = this::loadPlayer;
+    // Statistics that received amounts during the current tick
+    private final List<PlayerStatistics> pendingFlush = new ArrayList<>();
+    // Statistics that changed since the last save
+    private final Set<PlayerStatistics> dirtyStats = new HashSet<>();
+    // Statistics loaded from the shared file that don't have their own file yet, kept in the shared file until they do
+    private final Set<PlayerStatistics> unmigratedStats = new HashSet<>();
+    private Path playerFolder = null;
 
     private PlayerStatisticsData(CompoundTag tag) {
+        // Statistics used to be stored in this file, move them to the per-player files
         for (var key : tag.getAllKeys()) {
             var uuid = UUID.fromString(key);
-            stats.put(uuid, new PlayerStatistics(this, uuid, tag.getCompound(key)));
+            var statistics = new PlayerStatistics(this, uuid, tag.getCompound(key));
+            stats.put(uuid, statistics);
+            dirtyStats.add(statistics);
+            unmigratedStats.add(statistics);
         }
     }
 
@@ -50,22 +80,78 @@ public class PlayerStatisticsData extends MISavedData {
 
     public PlayerStatistics get(UUID uuid) {
         Objects.requireNonNull(uuid);
-        return stats.computeIfAbsent(uuid, statsFactory);
+        return stats.computeIfAbsent(uuid, statsLoader);
+    }
+
+    private Path getPlayerFile(UUID uuid) {
+        return playerFolder.resolve(uuid + ".dat");
+    }
+
+    private PlayerStatistics loadPlayer(UUID uuid) {
+        var statistics = new PlayerStatistics(this, uuid);
+        File file = getPlayerFile(uuid).toFile();
+        if (file.exists()) {
+            try {
+                statistics.readCompactTag(NbtIo.readCompressed(file));
+            } catch (IOException ex) {
+                ModernIndustrialization.LOGGER.error("Could not load player statistics {}", file, ex);
+            }
+        }
+        return statistics;
+    }
+
+    void markDirty(PlayerStatistics statistics) {
+        dirtyStats.add(statistics);
     }
 
     public PlayerStatistics get(Player player) {
         return get(player.getUUID());
     }
 
+    void scheduleFlush(PlayerStatistics statistics) {
+        pendingFlush.add(statistics);
+    }
+
+    private void flushPending() {
+        for (var statistics : pendingFlush) {
+            statistics.flushPending();
+        }
+        pendingFlush.clear();
+    }
+
     @Override
     public boolean isDirty() {
-        return true;
+        return !dirtyStats.isEmpty() || !pendingFlush.isEmpty();
     }
 
+    /**
+     * Rewrite the files of the players whose statistics changed since the last save.
+     * Players that could not be written stay dirty, and the shared file only keeps the old statistics that were not moved to their own file yet.
+     */
     @Override
     public CompoundTag save(CompoundTag tag) {
-        for (var entry : stats.entrySet()) {
-            tag.put(entry.getKey().toString(), entry.getValue().toTag());
+        flushPending();
+
+        try {
+            Files.createDirectories(playerFolder);
+
+            for (var it = dirtyStats.iterator(); it.hasNext();) {
+                var statistics = it.next();
+                File file = getPlayerFile(statistics.getUuid()).toFile();
+                try {
+                    writeSafely(statistics.toCompactTag(), file);
+                    it.remove();
+                    unmigratedStats.remove(statistics);
+                } catch (IOException ex) {
+                    ModernIndustrialization.LOGGER.error("Could not save player statistics {}", file, ex);
+                }
+            }
+        } catch (IOException ex) {
+            ModernIndustrialization.LOGGER.error("Could not create player statistics folder {}", playerFolder, ex);
+        }
+
+        for (var statistics : unmigratedStats) {
+            tag.put(statistics.getUuid().toString(), statistics.toTag());
         }
         return tag;
     }
@@ -75,6 +161,14 @@ public class PlayerStatisticsData extends MISavedData {
     public static PlayerStatisticsData get(MinecraftServer server) {
         var overworld = server.getLevel(ServerLevel.OVERWORLD);
         Objects.requireNonNull(overworld, "Couldn't find overworld");
-        return overworld.getDataStorage().computeIfAbsent(PlayerStatisticsData::new, PlayerStatisticsData::new, NAME);
+        var data = overworld.getDataStorage().computeIfAbsent(PlayerStatisticsData::new, PlayerStatisticsData::new, NAME);
+        if (data.playerFolder == null) {
+            data.playerFolder = server.getWorldPath(LevelResource.ROOT).resolve("data").resolve(NAME).normalize();
+        }
+        return data;
+    }
+
+    static {
+        ServerTickEvents.END_SERVER_TICK.register(server -> get(server).flushPending());
     }
 }
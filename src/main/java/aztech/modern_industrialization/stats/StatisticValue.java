@@ -27,6 +27,11 @@ import aztech.modern_industrialization.util.TickHelper;
 import net.minecraft.nbt.CompoundTag;
 
 public class StatisticValue {
+    /**
+     * Number of longs used by {@link #pack}: the all-time value, then the past rate, current rate and remaining ticks of each rate.
+     */
+    public static final int PACKED_SIZE = 1 + 3 * StatisticsRate.COUNT;
+
     private long allTime = 0;
     private final long[] pastRates = new long[StatisticsRate.COUNT];
     private final long[] currentRates = new long[StatisticsRate.COUNT];
@@ -46,6 +51,27 @@ public class StatisticValue {
         lastTick = TickHelper.getCurrentTick();
     }
 
+    public StatisticValue(long[] packed, int offset) {
+        allTime = packed[offset];
+        for (var rate : StatisticsRate.values()) {
+            int rateOffset = offset + 1 + 3 * rate.id;
+            pastRates[rate.id] = packed[rateOffset];
+            currentRates[rate.id] = packed[rateOffset + 1];
+            remainingTicks[rate.id] = (int) packed[rateOffset + 2];
+        }
+        lastTick = TickHelper.getCurrentTick();
+    }
+
+    public void pack(long[] packed, int offset) {
+        packed[offset] = allTime;
+        for (var rate : StatisticsRate.values()) {
+            int rateOffset = offset + 1 + 3 * rate.id;
+            packed[rateOffset] = pastRates[rate.id];
+            packed[rateOffset + 1] = currentRates[rate.id];
+            packed[rateOffset + 2] = remainingTicks[rate.id];
+        }
+    }
+
     public CompoundTag toNbt() {
         CompoundTag nbt = new CompoundTag();
         nbt.putLong("at", allTime);
@@ -40,31 +40,50 @@ public abstract class MISavedData extends SavedData {
 
     @Override
     public void save(File file) {
+        trySave(file);
+    }
+
+    /**
+     * Save the data if it is dirty. If the file could not be written, the data stays dirty.
+     *
+     * @return false if the file could not be written
+     */
+    protected boolean trySave(File file) {
         if (!this.isDirty()) {
-            return;
+            return true;
         }
 
-        File tempFile = file.toPath().getParent().resolve(file.getName() + ".temp").toFile();
-
         CompoundTag compoundTag = new CompoundTag();
         compoundTag.put("data", this.save(new CompoundTag()));
         NbtUtils.addCurrentDataVersion(compoundTag);
         try {
-            // Write to temp file first.
-            NbtIo.writeCompressed(compoundTag, tempFile);
-            // Delete old file.
-            if (file.exists()) {
-                if (!file.delete()) {
-                    LOGGER.error("Could not delete old file {}", file);
-                }
-            }
-            // Rename temp file to the correct name.
-            if (!tempFile.renameTo(file)) {
-                LOGGER.error("Could not rename file {} to {}", tempFile, file);
-            }
+            writeSafely(compoundTag, file);
         } catch (IOException iOException) {
             LOGGER.error("Could not save data {}", this, iOException);
+            this.setDirty(true);
+            return false;
         }
         this.setDirty(false);
+        return true;
+    }
+
+    /**
+     * Write a compressed tag to a temporary file first, and then replace the target file with it.
+     */
+    protected static void writeSafely(CompoundTag tag, File file) throws IOException {
+        File tempFile = file.toPath().getParent().resolve(file.getName() + ".temp").toFile();
+
+        // Write to temp file first.
+        NbtIo.writeCompressed(tag, tempFile);
+        // Delete old file.
+        if (file.exists()) {
+            if (!file.delete()) {
+                LOGGER.error("Could not delete old file {}", file);
+            }
+        }
+        // Rename temp file to the correct name.
+        if (!tempFile.renameTo(file)) {
+            LOGGER.error("Could not rename file {} to {}", tempFile, file);
+        }
     }
 }